@@ -1,5 +1,7 @@
 package org.sakaiproject.gradebookng;
 
+import org.apache.commons.lang.BooleanUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.wicket.protocol.http.WebApplication;
 import org.apache.wicket.request.IRequestHandler;
 import org.apache.wicket.request.cycle.AbstractRequestCycleListener;
@@ -12,6 +14,7 @@ import org.sakaiproject.gradebookng.tool.pages.ImportExportPage;
 import org.sakaiproject.gradebookng.tool.pages.NoDataPage;
 import org.sakaiproject.gradebookng.tool.pages.PermissionsPage;
 import org.sakaiproject.gradebookng.tool.pages.SettingsPage;
+import org.sakaiproject.gradebookng.tool.util.PageSizeProfilingSerializer;
 
 /**
  * Main application class
@@ -20,6 +23,11 @@ import org.sakaiproject.gradebookng.tool.pages.SettingsPage;
  *
  */
 public class GradebookNgApplication extends WebApplication {    
+	
+	/**
+	 * Default size in bytes over which a serialized page is logged as too big
+	 */
+	private static final long DEFAULT_PAGE_SIZE_BUDGET = 2 * 1024 * 1024;
    
 	@Override
 	public void init() {
@@ -58,6 +66,11 @@ public class GradebookNgApplication extends WebApplication {
 		
 		// Intercept the stacktrace so it doesnt fill the page
 		getRequestCycleListeners().add(new SakaiRequestCycleListener());
+		
+		// Warn if pages in the page store get too big, and optionally profile them. See web.xml for the settings.
+		long pageSizeBudget = NumberUtils.toLong(getInitParameter("pageSizeBudget"), DEFAULT_PAGE_SIZE_BUDGET);
+		boolean pageSizeProfiling = BooleanUtils.toBoolean(getInitParameter("pageSizeProfiling"));
+		getFrameworkSettings().setSerializer(new PageSizeProfilingSerializer(getFrameworkSettings().getSerializer(), pageSizeBudget, pageSizeProfiling));
 
 		
 
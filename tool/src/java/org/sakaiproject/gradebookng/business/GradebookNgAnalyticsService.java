@@ -0,0 +1,411 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.sakaiproject.gradebookng.business.model.GbCourseAnalytics;
+import org.sakaiproject.gradebookng.business.model.GbCourseAnalytics.CategoryAverage;
+import org.sakaiproject.gradebookng.business.model.GbCourseAnalytics.SectionDistribution;
+import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
+import org.sakaiproject.gradebookng.business.model.GbGroup;
+import org.sakaiproject.gradebookng.business.model.GbMembershipIndex;
+import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+/**
+ * Computes and caches the analytics snapshot for a gradebook, see {@link GbCourseAnalytics}.
+ *
+ * The grade matrix is loaded once, then worked through in parallel in blocks of students on a fork/join pool, and the
+ * partial results are merged. Snapshots are cached per site and are only ever computed in the background, one site at a
+ * time, so a request never waits for one. Until the first snapshot for a site is ready a pending one is returned. A snapshot
+ * that is older than the refresh period is still returned straight away, and is computed again in the background. Bulk
+ * changes such as imports ask for a refresh when they finish, so the next dashboard load has current numbers.
+ */
+@CommonsLog
+public class GradebookNgAnalyticsService {
+
+	private static final String CACHE_NAME = "org.sakaiproject.gradebookng.cache.analytics";
+
+	@Setter
+	private GradebookNgBusinessService businessService;
+
+	@Setter
+	private SessionManager sessionManager;
+
+	@Setter
+	private ThreadLocalManager threadLocalManager;
+
+	@Setter
+	private MemoryService memoryService;
+
+	/**
+	 * Number of threads working through the matrix
+	 */
+	@Setter
+	private int parallelism = 4;
+
+	/**
+	 * Number of students each task works through without splitting
+	 */
+	@Setter
+	private int blockSize = 250;
+
+	/**
+	 * How long a snapshot is used before it is computed again in the background, in ms
+	 */
+	@Setter
+	private long refreshAfter = 15 * 60 * 1000;
+
+	/**
+	 * Percentage under which a student is at risk
+	 */
+	@Setter
+	private double atRiskThreshold = 60;
+
+	private Cache cache;
+	private ForkJoinPool pool;
+	private ExecutorService executor;
+
+	//sites that are queued to be computed again, so that each is only queued once
+	private final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	public void init() {
+		this.cache = this.memoryService.getCache(CACHE_NAME);
+		if(this.cache == null) {
+			this.cache = this.memoryService.createCache(CACHE_NAME, null);
+		}
+
+		this.pool = new ForkJoinPool(this.parallelism);
+
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gradebookng-analytics-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public void destroy() {
+		this.executor.shutdownNow();
+		this.pool.shutdownNow();
+	}
+
+	/**
+	 * Get the analytics for a site. If none have been computed yet, they are queued and a pending snapshot is returned.
+	 *
+	 * @param siteId the siteId
+	 * @return the analytics, a pending snapshot, or null if there is no gradebook in the site
+	 */
+	public GbCourseAnalytics getAnalytics(String siteId) {
+		GbCourseAnalytics analytics = (GbCourseAnalytics) this.cache.get(siteId);
+		if(analytics == null) {
+			if(this.businessService.getGradebookAssignments(siteId) == null) {
+				return null;
+			}
+			refresh(siteId);
+			return GbCourseAnalytics.pending(siteId, this.atRiskThreshold);
+		}
+		if(System.currentTimeMillis() - analytics.getComputed() > this.refreshAfter) {
+			refresh(siteId);
+		}
+		return analytics;
+	}
+
+	/**
+	 * Compute the analytics for a site again in the background, as the current user
+	 *
+	 * @param siteId the siteId
+	 */
+	public void refresh(final String siteId) {
+		if(!this.refreshing.add(siteId)) {
+			return;
+		}
+
+		//the gradebook service checks permissions against the session user, so run as the user that asked for the refresh
+		Session current = this.sessionManager.getCurrentSession();
+		final String userId = current.getUserId();
+		final String userEid = current.getUserEid();
+
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				//the thread is reused, so each refresh gets its own session and nothing is left on the thread for the next one
+				threadLocalManager.clear();
+				Session session = sessionManager.startSession();
+				session.setUserId(userId);
+				session.setUserEid(userEid);
+				sessionManager.setCurrentSession(session);
+				try {
+					GbCourseAnalytics analytics = compute(siteId);
+					if(analytics != null) {
+						cache.put(siteId, analytics);
+					}
+				} catch (RuntimeException e) {
+					log.warn("Could not compute the analytics for site " + siteId, e);
+				} finally {
+					session.invalidate();
+					threadLocalManager.clear();
+					refreshing.remove(siteId);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Load the matrix and work through it on the pool
+	 */
+	private GbCourseAnalytics compute(String siteId) {
+		List<Assignment> assignments = this.businessService.getGradebookAssignments(siteId);
+		if(assignments == null) {
+			return null;
+		}
+		List<GbStudentGradeInfo> matrix = this.businessService.buildGradeMatrix(siteId, assignments);
+		if(matrix == null) {
+			return null;
+		}
+
+		Columns columns = new Columns(assignments);
+
+		//the sections and groups each student is in, by row
+		GbMembershipIndex index = this.businessService.getMembershipIndex(siteId);
+		List<GbGroup> groups = index.getGroups();
+		int[][] rowGroups = getRowGroups(matrix, groups, index);
+
+		Partial result = this.pool.invoke(new AnalyticsTask(matrix, columns, rowGroups, groups.size(), 0, matrix.size()));
+
+		List<CategoryAverage> categoryAverages = new ArrayList<>();
+		for(int i = 0; i < columns.categories.size(); i++) {
+			int graded = result.categoryCounts[i];
+			Double average = (graded > 0) ? result.categorySums[i] / graded : null;
+			categoryAverages.add(new CategoryAverage(columns.categories.get(i), average, graded));
+		}
+
+		List<SectionDistribution> sectionDistributions = new ArrayList<>();
+		for(int i = 0; i < groups.size(); i++) {
+			GbGroup group = groups.get(i);
+			sectionDistributions.add(new SectionDistribution(group.getId(), group.getTitle(), result.sectionDistributions[i]));
+		}
+
+		return new GbCourseAnalytics(siteId, matrix.size(), this.atRiskThreshold, result.atRisk, categoryAverages,
+				result.studentTotals, result.studentPercentages, result.distribution, sectionDistributions);
+	}
+
+	private static int[][] getRowGroups(List<GbStudentGradeInfo> matrix, List<GbGroup> groups, GbMembershipIndex index) {
+		Map<String, List<Integer>> studentGroups = new HashMap<>();
+		for(int i = 0; i < groups.size(); i++) {
+			Set<String> members = index.getMembers(groups.get(i).getId());
+			if(members == null) {
+				continue;
+			}
+			for(String member: members) {
+				List<Integer> memberGroups = studentGroups.get(member);
+				if(memberGroups == null) {
+					memberGroups = new ArrayList<>();
+					studentGroups.put(member, memberGroups);
+				}
+				memberGroups.add(i);
+			}
+		}
+
+		int[][] rowGroups = new int[matrix.size()][];
+		for(int row = 0; row < matrix.size(); row++) {
+			List<Integer> memberGroups = studentGroups.get(matrix.get(row).getStudentUuid());
+			rowGroups[row] = new int[(memberGroups != null) ? memberGroups.size() : 0];
+			for(int i = 0; i < rowGroups[row].length; i++) {
+				rowGroups[row][i] = memberGroups.get(i);
+			}
+		}
+		return rowGroups;
+	}
+
+	private static int bucket(double percentage) {
+		return Math.max(0, Math.min(GbCourseAnalytics.BUCKETS - 1, (int) (percentage / 100 * GbCourseAnalytics.BUCKETS)));
+	}
+
+	/**
+	 * The assignments as arrays, so the tasks don't go back to the assignment objects for each cell
+	 */
+	private static class Columns {
+
+		private final long[] ids;
+		private final double[] points;
+		private final boolean[] counted;
+		private final boolean[] extraCredit;
+		private final int[] category;
+		private final List<String> categories = new ArrayList<>();
+
+		Columns(List<Assignment> assignments) {
+			int cols = assignments.size();
+			this.ids = new long[cols];
+			this.points = new double[cols];
+			this.counted = new boolean[cols];
+			this.extraCredit = new boolean[cols];
+			this.category = new int[cols];
+
+			for(int col = 0; col < cols; col++) {
+				Assignment assignment = assignments.get(col);
+				this.ids[col] = assignment.getId();
+				this.points[col] = (assignment.getPoints() != null) ? assignment.getPoints() : 0;
+				this.counted[col] = assignment.isCounted();
+				this.extraCredit[col] = assignment.isExtraCredit();
+
+				int index = this.categories.indexOf(assignment.getCategoryName());
+				if(index == -1) {
+					index = this.categories.size();
+					this.categories.add(assignment.getCategoryName());
+				}
+				this.category[col] = index;
+			}
+		}
+	}
+
+	/**
+	 * The results for a block of students, which are merged as the tasks complete
+	 */
+	private static class Partial {
+
+		private final double[] categorySums;
+		private final int[] categoryCounts;
+		private final Map<String, Double> studentTotals = new HashMap<>();
+		private final Map<String, Double> studentPercentages = new HashMap<>();
+		private final int[] distribution = new int[GbCourseAnalytics.BUCKETS];
+		private final int[][] sectionDistributions;
+		private int atRisk;
+
+		Partial(int categories, int sections) {
+			this.categorySums = new double[categories];
+			this.categoryCounts = new int[categories];
+			this.sectionDistributions = new int[sections][GbCourseAnalytics.BUCKETS];
+		}
+
+		void merge(Partial other) {
+			for(int i = 0; i < this.categorySums.length; i++) {
+				this.categorySums[i] += other.categorySums[i];
+				this.categoryCounts[i] += other.categoryCounts[i];
+			}
+			this.studentTotals.putAll(other.studentTotals);
+			this.studentPercentages.putAll(other.studentPercentages);
+			for(int b = 0; b < GbCourseAnalytics.BUCKETS; b++) {
+				this.distribution[b] += other.distribution[b];
+				for(int i = 0; i < this.sectionDistributions.length; i++) {
+					this.sectionDistributions[i][b] += other.sectionDistributions[i][b];
+				}
+			}
+			this.atRisk += other.atRisk;
+		}
+	}
+
+	/**
+	 * Works through a range of rows in the matrix, splitting it in half until it is no bigger than the block size
+	 */
+	private class AnalyticsTask extends RecursiveTask<Partial> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<GbStudentGradeInfo> matrix;
+		private final Columns columns;
+		private final int[][] rowGroups;
+		private final int sections;
+		private final int from;
+		private final int to;
+
+		AnalyticsTask(List<GbStudentGradeInfo> matrix, Columns columns, int[][] rowGroups, int sections, int from, int to) {
+			this.matrix = matrix;
+			this.columns = columns;
+			this.rowGroups = rowGroups;
+			this.sections = sections;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Partial compute() {
+			if(this.to - this.from > blockSize) {
+				int middle = (this.from + this.to) >>> 1;
+				AnalyticsTask left = new AnalyticsTask(this.matrix, this.columns, this.rowGroups, this.sections, this.from, middle);
+				AnalyticsTask right = new AnalyticsTask(this.matrix, this.columns, this.rowGroups, this.sections, middle, this.to);
+				left.fork();
+				Partial result = right.compute();
+				result.merge(left.join());
+				return result;
+			}
+
+			Partial result = new Partial(this.columns.categories.size(), this.sections);
+			for(int row = this.from; row < this.to; row++) {
+				addStudent(result, row);
+			}
+			return result;
+		}
+
+		private void addStudent(Partial result, int row) {
+			GbStudentGradeInfo student = this.matrix.get(row);
+			Map<Long, GbGradeInfo> grades = student.getGrades();
+
+			double earned = 0;
+			double possible = 0;
+			for(int col = 0; col < this.columns.ids.length; col++) {
+				GbGradeInfo gradeInfo = grades.get(this.columns.ids[col]);
+				if(gradeInfo == null || !NumberUtils.isNumber(gradeInfo.getGrade())) {
+					continue;
+				}
+				double grade = NumberUtils.toDouble(gradeInfo.getGrade());
+				double points = this.columns.points[col];
+
+				if(points > 0) {
+					int category = this.columns.category[col];
+					result.categorySums[category] += grade / points * 100;
+					result.categoryCounts[category]++;
+				}
+
+				if(this.columns.counted[col]) {
+					earned += grade;
+					if(!this.columns.extraCredit[col]) {
+						possible += points;
+					}
+				}
+			}
+
+			result.studentTotals.put(student.getStudentUuid(), earned);
+			if(possible <= 0) {
+				return;
+			}
+
+			double percentage = earned / possible * 100;
+			result.studentPercentages.put(student.getStudentUuid(), percentage);
+
+			int bucket = bucket(percentage);
+			result.distribution[bucket]++;
+			for(int section: this.rowGroups[row]) {
+				result.sectionDistributions[section][bucket]++;
+			}
+			if(percentage < atRiskThreshold) {
+				result.atRisk++;
+			}
+		}
+	}
+
+}
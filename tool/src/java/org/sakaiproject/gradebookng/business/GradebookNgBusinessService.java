@@ -1,15 +1,24 @@
 package org.sakaiproject.gradebookng.business;
 
+import java.io.Serializable;
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.bind.JAXBException;
 
@@ -21,6 +30,7 @@ import org.apache.commons.lang.builder.CompareToBuilder;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.lang.time.StopWatch;
 import org.sakaiproject.coursemanagement.api.CourseManagementService;
+import org.sakaiproject.coursemanagement.api.Membership;
 import org.sakaiproject.coursemanagement.api.Section;
 import org.sakaiproject.coursemanagement.api.exception.IdNotFoundException;
 import org.sakaiproject.entity.api.ResourceProperties;
@@ -30,13 +40,19 @@ import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.gradebookng.business.dto.AssignmentOrder;
 import org.sakaiproject.gradebookng.business.exception.GbException;
 import org.sakaiproject.gradebookng.business.model.GbAssignmentGradeSortOrder;
+import org.sakaiproject.gradebookng.business.model.GbAssignmentStatistics;
+import org.sakaiproject.gradebookng.business.model.GbCommentIndex;
 import org.sakaiproject.gradebookng.business.model.GbGradeCell;
 import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbGradeLog;
+import org.sakaiproject.gradebookng.business.model.GbGradeLogPage;
 import org.sakaiproject.gradebookng.business.model.GbGroup;
 import org.sakaiproject.gradebookng.business.model.GbGroupType;
+import org.sakaiproject.gradebookng.business.model.GbMembershipIndex;
 import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
+import org.sakaiproject.gradebookng.business.model.GbStudentSortType;
 import org.sakaiproject.gradebookng.business.model.GbUser;
+import org.sakaiproject.gradebookng.business.util.StringPool;
 import org.sakaiproject.gradebookng.business.util.Temp;
 import org.sakaiproject.gradebookng.business.util.XmlList;
 import org.sakaiproject.memory.api.Cache;
@@ -57,7 +73,7 @@ import org.sakaiproject.tool.gradebook.Gradebook;
 import org.sakaiproject.tool.gradebook.GradingEvent;
 import org.sakaiproject.user.api.User;
 import org.sakaiproject.user.api.UserDirectoryService;
-import org.sakaiproject.user.api.UserNotDefinedException;
+import org.sakaiproject.util.ResourceLoader;
 
 
 /**
@@ -94,11 +110,74 @@ public class GradebookNgBusinessService {
 	@Setter
 	private MemoryService memoryService;
 	
+	@Setter
+	private GradebookNgUserCache userCache;
+	
 	public static final String ASSIGNMENT_ORDER_PROP = "gbng_assignment_order";
 	
 	private Cache cache;
 	private static final String NOTIFICATIONS_CACHE_NAME = "org.sakaiproject.gradebookng.cache.notifications";
 	
+	private Cache membershipCache;
+	private static final String MEMBERSHIP_CACHE_NAME = "org.sakaiproject.gradebookng.cache.membership";
+	
+	private Cache rosterCache;
+	private static final String ROSTER_CACHE_NAME = "org.sakaiproject.gradebookng.cache.roster";
+	
+	/**
+	 * How long the gradeable users in a site are cached for, in ms. Changes to site membership clear it sooner, see {@link #invalidateMembership(String)}
+	 */
+	@Setter
+	private long rosterTtl = 5 * 60 * 1000;
+	
+	private Cache courseGradeCache;
+	private static final String COURSE_GRADE_CACHE_NAME = "org.sakaiproject.gradebookng.cache.coursegrades";
+	
+	/**
+	 * How long the course grades for a gradebook are cached for, in ms. Grades saved through GBNG clear the affected students sooner
+	 */
+	@Setter
+	private long courseGradeTtl = 10 * 60 * 1000;
+	
+	//when grades were last saved for each student, keyed on gradebookUid then studentUuid. Held apart from the cached course grades
+	//so that a save is never lost when the course grades are worked out again at the same time
+	private final ConcurrentMap<String, ConcurrentMap<String, Long>> courseGradeChanges = new ConcurrentHashMap<>();
+	
+	private Cache statisticsCache;
+	private static final String STATISTICS_CACHE_NAME = "org.sakaiproject.gradebookng.cache.statistics";
+	
+	//recorded by the gradebook service against grades that are set through it
+	private static final String CLIENT_SERVICE_DESCRIPTION = "gradebookng";
+	
+	/**
+	 * How long the statistics for an assignment are cached for, in ms. Grades changed outside of GBNG are only seen after this
+	 */
+	@Setter
+	private long statisticsTtl = 5 * 60 * 1000;
+	
+	//bumped after the grades for an assignment are written, keyed on gradebookUid then assignmentId. Statistics that were worked out
+	//while a write was in progress may or may not include it, so they are not kept. Cleared along with the cached statistics
+	private final ConcurrentMap<String, ConcurrentMap<Long, AtomicLong>> statisticsVersions = new ConcurrentHashMap<>();
+	
+	private Cache gradeLogCache;
+	private static final String GRADE_LOG_CACHE_NAME = "org.sakaiproject.gradebookng.cache.gradelog";
+	
+	/**
+	 * How long the grade log for a cell is cached for, in ms. Grades saved through GBNG clear it sooner
+	 */
+	@Setter
+	private long gradeLogTtl = 2 * 60 * 1000;
+	
+	/**
+	 * Most distinct grade and comment strings pooled in a single matrix build. Comments longer than STRING_POOL_MAX_LENGTH are not pooled
+	 */
+	@Setter
+	private int stringPoolSize = 10000;
+	private static final int STRING_POOL_MAX_LENGTH = 64;
+	
+	//collators for sorting student names, by locale
+	private final ConcurrentMap<Locale, Collator> collators = new ConcurrentHashMap<>();
+	
 	@SuppressWarnings("unchecked")
 	public void init() {
 		
@@ -108,6 +187,53 @@ public class GradebookNgBusinessService {
 		if(cache == null) {
 			cache = memoryService.createCache("org.sakaiproject.gradebookng.cache.notifications", null);
 		}
+		
+		//sections and groups and their members, keyed on siteId. The TTL is set in sakai.properties like any other cache
+		membershipCache = memoryService.getCache(MEMBERSHIP_CACHE_NAME);
+		if(membershipCache == null) {
+			membershipCache = memoryService.createCache(MEMBERSHIP_CACHE_NAME, null);
+		}
+		
+		//gradeable users, keyed on siteId
+		rosterCache = memoryService.getCache(ROSTER_CACHE_NAME);
+		if(rosterCache == null) {
+			rosterCache = memoryService.createCache(ROSTER_CACHE_NAME, null);
+		}
+		
+		//course grades, keyed on gradebookUid
+		courseGradeCache = memoryService.getCache(COURSE_GRADE_CACHE_NAME);
+		if(courseGradeCache == null) {
+			courseGradeCache = memoryService.createCache(COURSE_GRADE_CACHE_NAME, null);
+		}
+		
+		//assignment statistics, keyed on gradebookUid
+		statisticsCache = memoryService.getCache(STATISTICS_CACHE_NAME);
+		if(statisticsCache == null) {
+			statisticsCache = memoryService.createCache(STATISTICS_CACHE_NAME, null);
+		}
+		
+		//grade log, keyed on assignmentId and studentUuid
+		gradeLogCache = memoryService.getCache(GRADE_LOG_CACHE_NAME);
+		if(gradeLogCache == null) {
+			gradeLogCache = memoryService.createCache(GRADE_LOG_CACHE_NAME, null);
+		}
+	}
+	
+	/**
+	 * Clear the cached roster and section and group membership for a site, so it is looked up again on next use.
+	 * Called when the membership or permissions of the site or one of its groups change.
+	 * 
+	 * The course grades and statistics are worked out for the students in the site so are cleared too. These are keyed on
+	 * the gradebook uid, which is the site id.
+	 * 
+	 * @param siteId the siteId
+	 */
+	public void invalidateMembership(String siteId) {
+		rosterCache.remove(siteId);
+		membershipCache.remove(siteId);
+		courseGradeCache.remove(siteId);
+		statisticsCache.remove(siteId);
+		statisticsVersions.remove(siteId);
 	}
 	
 	
@@ -118,34 +244,125 @@ public class GradebookNgBusinessService {
 	 * @return a list of users as uuids or null if none
 	 */
 	private List<String> getGradeableUsers() {
-		try {
-			String siteId = this.getCurrentSiteId();
-			Set<String> userUuids = siteService.getSite(siteId).getUsersIsAllowed(Permissions.VIEW_OWN_GRADES.getValue());
-			
-			return new ArrayList<>(userUuids);
-						
-		} catch (IdUnusedException e) {
-			e.printStackTrace();
-			return null;
+		return this.getGradeableUsers(this.getCurrentSiteId());
+	}
+	
+	/**
+	 * Get a list of all users in the specified site that can have grades
+	 * 
+	 * @param siteId the siteId
+	 * @return a list of users as uuids or null if none
+	 */
+	private List<String> getGradeableUsers(String siteId) {
+		
+		//working this out resolves the permissions for everyone in the site, so it is cached
+		Roster roster = (Roster) rosterCache.get(siteId);
+		if(roster == null || roster.isExpired(this.rosterTtl)) {
+			try {
+				Set<String> userUuids = siteService.getSite(siteId).getUsersIsAllowed(Permissions.VIEW_OWN_GRADES.getValue());
+				
+				roster = new Roster(userUuids);
+				rosterCache.put(siteId, roster);
+				
+			} catch (IdUnusedException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+		
+		//callers can change the list so they get their own copy
+		return new ArrayList<>(roster.userUuids);
+	}
+	
+	/**
+	 * Get a list of the users in the specified site that can have grades and are in the given section or group
+	 * 
+	 * @param siteId the siteId
+	 * @param groupId the section eid or group id, or null for all users
+	 * @return a list of users as uuids or null if none
+	 */
+	private List<String> getGradeableUsers(String siteId, String groupId) {
+		List<String> userUuids = this.getGradeableUsers(siteId);
+		if(userUuids == null || groupId == null) {
+			return userUuids;
 		}
+		
+		Set<String> members = this.getMembershipIndex(siteId).getMembers(groupId);
+		if(members == null) {
+			//the section or group has gone since it was selected, so show everyone
+			log.debug("No section or group with id " + groupId + " in site " + siteId);
+			return userUuids;
+		}
+		
+		userUuids.retainAll(members);
+		return userUuids;
+	}
+	
+	/**
+	 * Given a list of uuids, get a list of Users sorted by last name. These come from the user cache so the directory is only called for users that aren't cached.
+	 * 
+	 * @param userUuids list of user uuids
+	 * @return
+	 */
+	private List<GbUser> getUsers(List<String> userUuids) throws GbException {
+		return this.getUsers(userUuids, GbStudentSortType.LAST_NAME);
 	}
 	
 	/**
-	 * Given a list of uuids, get a list of Users
+	 * Given a list of uuids, get a list of Users sorted by the given name for the current user's locale
 	 * 
 	 * @param userUuids list of user uuids
+	 * @param sortType the name to sort by
 	 * @return
 	 */
-	private List<User> getUsers(List<String> userUuids) throws GbException {
+	private List<GbUser> getUsers(List<String> userUuids, GbStudentSortType sortType) throws GbException {
 		
+		List<GbUser> users;
 		try {
-			List<User> users = userDirectoryService.getUsers(userUuids);
-			Collections.sort(users, new LastNameComparator()); //TODO this needs to take into account the GbStudentSortType
-			return users;
+			users = userCache.getUsers(userUuids);
 		} catch (RuntimeException e) {
 			//an LDAP exception can sometimes be thrown here, catch and rethrow
 			throw new GbException("An error occurred getting the list of users.", e);
 		}
+		
+		Collections.sort(users, new StudentNameComparator(sortType, new ResourceLoader().getLocale()));
+		return users;
+	}
+	
+	/**
+	 * Get the collator for a locale. One is kept per locale, as sort keys are only comparable if made by the same collator.
+	 * 
+	 * @param locale
+	 * @return
+	 */
+	private Collator getCollator(Locale locale) {
+		Collator collator = collators.get(locale);
+		if(collator == null) {
+			collator = Collator.getInstance(locale);
+			Collator existing = collators.putIfAbsent(locale, collator);
+			if(existing != null) {
+				collator = existing;
+			}
+		}
+		return collator;
+	}
+	
+	/**
+	 * Get a map of the users in the current site that can have grades, so that a user's eid (ie from an import file)
+	 * can be used to lookup their uuid. Only the roster is loaded, not any grades.
+	 * 
+	 * @return Map where the user's eid is the key and the uuid is the value
+	 */
+	public Map<String, String> getGradeableUserEidMap() throws GbException {
+		Map<String, String> userMap = new HashMap<>();
+		
+		List<String> userUuids = this.getGradeableUsers();
+		if(userUuids != null) {
+			for(GbUser user: this.getUsers(userUuids)) {
+				userMap.put(user.getEid(), user.getUserUuid());
+			}
+		}
+		return userMap;
 	}
 	
 	/**
@@ -211,21 +428,286 @@ public class GradebookNgBusinessService {
 	 */
 	@SuppressWarnings("unchecked")
 	public Map<String,String> getSiteCourseGrades() {
+		return this.getSiteCourseGrades(this.getCurrentSiteId());
+	}
+	
+	/**
+	 * Get a map of course grades for all users in the specified site. If calling outside of GBNG, use this method as you can provide the site id.
+	 * 
+	 * @param siteId the siteId
+	 * @return the map of course grades for students, or an empty map
+	 */
+	public Map<String,String> getSiteCourseGrades(String siteId) {
 		
 		Map<String,String> courseGrades = new HashMap<>();
 		
-		Gradebook gradebook = this.getGradebook();
+		Gradebook gradebook = this.getGradebook(siteId);
 		if(gradebook != null) {
+			courseGrades.putAll(this.getCourseGrades(gradebook, null).grades);
+		}
+		
+		return courseGrades;
+	}
+	
+	/**
+	 * Get the grade statistics for an assignment in the current site
+	 * 
+	 * @param assignmentId id of the assignment
+	 * @return the statistics, or null if there is no gradebook or no such assignment
+	 */
+	public GbAssignmentStatistics getAssignmentStatistics(final long assignmentId) {
+		return this.getAssignmentStatistics(this.getCurrentSiteId(), assignmentId);
+	}
+	
+	/**
+	 * Get the grade statistics for an assignment in the specified site. If calling outside of GBNG, use this method as you can provide the site id.
+	 * 
+	 * The statistics are worked out from the grades for the gradeable users in the site and are cached for the statistics TTL. Grades
+	 * saved through saveGrade are applied to the cached statistics as they are saved, other changes to the assignment's grades clear them.
+	 * 
+	 * @param siteId the siteId
+	 * @param assignmentId id of the assignment
+	 * @return the statistics, or null if there is no gradebook or no such assignment
+	 */
+	public GbAssignmentStatistics getAssignmentStatistics(final String siteId, final long assignmentId) {
+		
+		Gradebook gradebook = this.getGradebook(siteId);
+		if(gradebook == null) {
+			return null;
+		}
+		
+		ConcurrentHashMap<Long, GbAssignmentStatistics> statistics = this.getStatistics(gradebook);
+		GbAssignmentStatistics rval = statistics.get(assignmentId);
+		if(rval != null && !rval.isExpired(this.statisticsTtl)) {
+			return rval;
+		}
+		
+		Assignment assignment = this.getAssignment(siteId, assignmentId);
+		if(assignment == null) {
+			return null;
+		}
+		
+		AtomicLong version = this.getStatisticsVersion(gradebook, assignmentId);
+		long loadedVersion = version.get();
+		
+		//only returns those where there is a grade
+		List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(), assignmentId, this.getGradeableUsers(siteId));
+		
+		double[] grades = new double[defs.size()];
+		int count = 0;
+		for(GradeDefinition def: defs) {
+			if(NumberUtils.isNumber(def.getGrade())) {
+				grades[count++] = NumberUtils.toDouble(def.getGrade());
+			}
+		}
+		
+		double points = (assignment.getPoints() != null) ? assignment.getPoints() : 0;
+		rval = new GbAssignmentStatistics(points, Arrays.copyOf(grades, count));
+		
+		statistics.put(assignmentId, rval);
+		
+		//if grades were written while these were being worked out they may be missing, so don't keep them. The versions are
+		//cleared with the cache, in which case the version is a new instance
+		if(this.getStatisticsVersion(gradebook, assignmentId) != version || version.get() != loadedVersion) {
+			statistics.remove(assignmentId, rval);
+		}
+		
+		return rval;
+	}
+	
+	/**
+	 * Get the count of times grades have been written for an assignment on this node, creating it if need be
+	 */
+	private AtomicLong getStatisticsVersion(Gradebook gradebook, Long assignmentId) {
+		ConcurrentMap<Long, AtomicLong> versions = statisticsVersions.get(gradebook.getUid());
+		if(versions == null) {
+			statisticsVersions.putIfAbsent(gradebook.getUid(), new ConcurrentHashMap<Long, AtomicLong>());
+			versions = statisticsVersions.get(gradebook.getUid());
+		}
+		AtomicLong version = versions.get(assignmentId);
+		if(version == null) {
+			versions.putIfAbsent(assignmentId, new AtomicLong());
+			version = versions.get(assignmentId);
+		}
+		return version;
+	}
+	
+	/**
+	 * Record that grades have been written for an assignment, call after the write
+	 */
+	private void bumpStatisticsVersion(Gradebook gradebook, Long assignmentId) {
+		this.getStatisticsVersion(gradebook, assignmentId).incrementAndGet();
+	}
+	
+	/**
+	 * Get the cached statistics for the assignments in a gradebook, keyed on assignment id.
+	 * 
+	 * The map is created once per gradebook and changed in place, so that statistics worked out at the same time for different
+	 * assignments don't replace each other.
+	 */
+	@SuppressWarnings("unchecked")
+	private ConcurrentHashMap<Long, GbAssignmentStatistics> getStatistics(Gradebook gradebook) {
+		synchronized (statisticsCache) {
+			ConcurrentHashMap<Long, GbAssignmentStatistics> statistics = (ConcurrentHashMap<Long, GbAssignmentStatistics>) statisticsCache.get(gradebook.getUid());
+			if(statistics == null) {
+				statistics = new ConcurrentHashMap<>();
+				statisticsCache.put(gradebook.getUid(), statistics);
+			}
+			return statistics;
+		}
+	}
+	
+	/**
+	 * Apply a saved grade to the cached statistics for the assignment, if there are any.
+	 * 
+	 * The change is only applied to the statistics that were cached before the grade was written, as those can't include it.
+	 * Statistics cached since may or may not include it, so they are cleared instead.
+	 * 
+	 * @param before the statistics that were cached before the grade was written, if any
+	 */
+	private void assignmentStatisticsChanged(Gradebook gradebook, Long assignmentId, GbAssignmentStatistics before, String oldGrade, String newGrade) {
+		this.bumpStatisticsVersion(gradebook, assignmentId);
+		
+		ConcurrentHashMap<Long, GbAssignmentStatistics> statistics = this.getStatistics(gradebook);
+		GbAssignmentStatistics assignmentStatistics = statistics.get(assignmentId);
+		if(assignmentStatistics == null) {
+			return;
+		}
+		if(assignmentStatistics == before) {
+			assignmentStatistics.update(oldGrade, newGrade);
+		} else {
+			statistics.remove(assignmentId, assignmentStatistics);
+		}
+	}
+	
+	/**
+	 * Get the statistics for an assignment as cached now, for passing to assignmentStatisticsChanged once a grade is written
+	 */
+	private GbAssignmentStatistics getCachedAssignmentStatistics(Gradebook gradebook, Long assignmentId) {
+		return this.getStatistics(gradebook).get(assignmentId);
+	}
+	
+	/**
+	 * Clear the cached statistics for an assignment, for when more than one grade changes or the assignment itself changes.
+	 * Call after the grades are written.
+	 */
+	private void invalidateAssignmentStatistics(Gradebook gradebook, Long assignmentId) {
+		this.bumpStatisticsVersion(gradebook, assignmentId);
+		
+		this.getStatistics(gradebook).remove(assignmentId);
+	}
+	
+	/**
+	 * Get the course grade for a single student in the specified site. This is served from the cached course grades unless
+	 * the student's grades have changed since they were worked out, so is cheap for views of one student.
+	 * 
+	 * @param siteId the siteId
+	 * @param studentUuid uuid of the student
+	 * @return the course grade, or null if none
+	 */
+	public String getCourseGrade(String siteId, String studentUuid) {
+		Gradebook gradebook = this.getGradebook(siteId);
+		if(gradebook == null) {
+			return null;
+		}
+		
+		GbUser student = userCache.getUser(studentUuid);
+		if(student == null) {
+			return null;
+		}
+		
+		return this.getCourseGrades(gradebook, Collections.singletonList(studentUuid)).grades.get(student.getEid());
+	}
+	
+	/**
+	 * Get the course grades for a gradebook, from the cache if they are still current for the given students.
+	 * 
+	 * The gradebook service only works out course grades for the whole gradebook. So they are cached, and the time grades are saved
+	 * for each student is recorded separately. The course grades are only worked out again when one of the students being looked at
+	 * has had a grade saved since the cached copy was started, the gradebook setup has changed, or they have been cached for longer
+	 * than the TTL.
+	 * 
+	 * @param gradebook the gradebook
+	 * @param studentUuids the students the grades are needed for, or null for all
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private CourseGrades getCourseGrades(Gradebook gradebook, Collection<String> studentUuids) {
+		CourseGrades courseGrades = (CourseGrades) courseGradeCache.get(gradebook.getUid());
+		if(courseGrades == null || courseGrades.isExpired(this.courseGradeTtl) || isCourseGradeChanged(gradebook, courseGrades.loaded, studentUuids)) {
+			
+			//a save made while these are being worked out is at or after this time, so is still seen as a change next time
+			long started = System.currentTimeMillis();
 			
 			//get course grades. THis new method for Sakai 11 does the override automatically, so GB1 data is preserved
 			//note that this DOES not have the course grade points earned because that is in GradebookManagerHibernateImpl
-			courseGrades = gradebookService.getImportCourseGrade(gradebook.getUid());
-						
+			courseGrades = new CourseGrades(gradebookService.getImportCourseGrade(gradebook.getUid()), started);
+			courseGradeCache.put(gradebook.getUid(), courseGrades);
+			
+			//saves from before the TTL can't affect any cached copy that is still used
+			ConcurrentMap<String, Long> changes = courseGradeChanges.get(gradebook.getUid());
+			if(changes != null) {
+				for(Map.Entry<String, Long> change: changes.entrySet()) {
+					if(started - change.getValue() > this.courseGradeTtl) {
+						changes.remove(change.getKey(), change.getValue());
+					}
+				}
+			}
 		}
-		
 		return courseGrades;
 	}
 	
+	/**
+	 * Check if any of the given students have had grades saved since the given time
+	 * 
+	 * @param gradebook the gradebook
+	 * @param since when the cached course grades were started
+	 * @param studentUuids the students to check, or null for any
+	 */
+	private boolean isCourseGradeChanged(Gradebook gradebook, long since, Collection<String> studentUuids) {
+		ConcurrentMap<String, Long> changes = courseGradeChanges.get(gradebook.getUid());
+		if(changes == null) {
+			return false;
+		}
+		if(studentUuids == null) {
+			studentUuids = changes.keySet();
+		}
+		for(String studentUuid: studentUuids) {
+			Long saved = changes.get(studentUuid);
+			if(saved != null && saved >= since) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Record that grades have been saved for some students, so their course grades need to be worked out again
+	 * 
+	 * @param gradebook the gradebook
+	 * @param studentUuids the students whose grades were saved
+	 */
+	private void courseGradesChanged(Gradebook gradebook, Collection<String> studentUuids) {
+		ConcurrentMap<String, Long> changes = courseGradeChanges.get(gradebook.getUid());
+		if(changes == null) {
+			courseGradeChanges.putIfAbsent(gradebook.getUid(), new ConcurrentHashMap<String, Long>());
+			changes = courseGradeChanges.get(gradebook.getUid());
+		}
+		long now = System.currentTimeMillis();
+		for(String studentUuid: studentUuids) {
+			changes.put(studentUuid, now);
+		}
+	}
+	
+	/**
+	 * Clear the cached course grades for a gradebook, for when a change affects every student, eg to the items or categories
+	 * 
+	 * @param gradebook the gradebook
+	 */
+	private void invalidateCourseGrades(Gradebook gradebook) {
+		courseGradeCache.remove(gradebook.getUid());
+	}
+	
 	
 	
 	
@@ -263,8 +745,46 @@ public class GradebookNgBusinessService {
 	 * TODO make the concurrency check a boolean instead of the null oldGrade
 	 */
 	public GradeSaveResponse saveGrade(final Long assignmentId, final String studentUuid, String oldGrade, String newGrade, final String comment) {
+		return this.saveGrade(this.getCurrentSiteId(), assignmentId, studentUuid, oldGrade, newGrade, comment);
+	}
+	
+	/**
+	 * Save the grade and comment for a student's assignment and do concurrency checking. If calling outside of GBNG, use this method as you can provide the site id.
+	 * 
+	 * @param siteId		the siteId
+	 * @param assignmentId	id of the gradebook assignment
+	 * @param studentUuid	uuid of the user
+	 * @param oldGrade 		old grade, passed in for concurrency checking/ If null, concurrency checking is skipped.
+	 * @param newGrade		new grade for the assignment/user
+	 * @param comment		optional comment for the grade. Can be null.
+	 * 
+	 * @return
+	 */
+	public GradeSaveResponse saveGrade(final String siteId, final Long assignmentId, final String studentUuid, String oldGrade, String newGrade, final String comment) {
+		return this.saveGrade(siteId, assignmentId, studentUuid, oldGrade, newGrade, comment, false);
+	}
+	
+	/**
+	 * Save the grade for a student's assignment and do concurrency checking, leaving the comment as it is. For when only the
+	 * grade is being edited, as in a grade cell, so the comment doesn't have to be fetched to pass back in.
+	 * 
+	 * @param assignmentId	id of the gradebook assignment
+	 * @param studentUuid	uuid of the user
+	 * @param oldGrade 		old grade, passed in for concurrency checking/ If null, concurrency checking is skipped.
+	 * @param newGrade		new grade for the assignment/user
+	 * 
+	 * @return
+	 */
+	public GradeSaveResponse saveGradeOnly(final Long assignmentId, final String studentUuid, String oldGrade, String newGrade) {
+		return this.saveGrade(this.getCurrentSiteId(), assignmentId, studentUuid, oldGrade, newGrade, null, true);
+	}
+	
+	/**
+	 * Save the grade, and the comment unless it is to be kept, and do concurrency checking
+	 */
+	private GradeSaveResponse saveGrade(final String siteId, final Long assignmentId, final String studentUuid, String oldGrade, String newGrade, final String comment, final boolean keepComment) {
 		
-		Gradebook gradebook = this.getGradebook();
+		Gradebook gradebook = this.getGradebook(siteId);
 		if(gradebook == null) {
 			return GradeSaveResponse.ERROR;
 		}
@@ -305,7 +825,7 @@ public class GradebookNgBusinessService {
 		
 		//over limit check, get max points for assignment and check if the newGrade is over limit
 		//we still save it but we return the warning
-		Assignment assignment = this.getAssignment(assignmentId);
+		Assignment assignment = this.getAssignment(siteId, assignmentId);
 		Double maxPoints = assignment.getPoints();
 		
 		Double newGradePoints = NumberUtils.toDouble(newGrade);
@@ -318,9 +838,18 @@ public class GradebookNgBusinessService {
 		}
 		
 		//save
+		GbAssignmentStatistics statistics = this.getCachedAssignmentStatistics(gradebook, assignmentId);
 		try {
-			//note, you must pass in the comment or it wil lbe nulled out by the GB service
-			gradebookService.saveGradeAndCommentForStudent(gradebook.getUid(), assignmentId, studentUuid, newGrade, comment);
+			if(keepComment) {
+				//only sets the score, so the stored comment is untouched
+				gradebookService.setAssignmentScoreString(gradebook.getUid(), assignmentId, studentUuid, newGrade, CLIENT_SERVICE_DESCRIPTION);
+			} else {
+				//note, you must pass in the comment or it wil lbe nulled out by the GB service
+				gradebookService.saveGradeAndCommentForStudent(gradebook.getUid(), assignmentId, studentUuid, newGrade, comment);
+			}
+			this.courseGradesChanged(gradebook, Collections.singletonList(studentUuid));
+			this.assignmentStatisticsChanged(gradebook, assignmentId, statistics, storedGrade, newGrade);
+			this.invalidateGradeLog(assignmentId, Collections.singletonList(studentUuid));
 			if(rval == null) {
 				//if we don't have some other warning, it was all OK
 				rval = GradeSaveResponse.OK;				
@@ -331,8 +860,63 @@ public class GradebookNgBusinessService {
 		}
 		return rval;
 	}
-	
-	
+
+	/**
+	 * Save a batch of grades and comments for a single assignment, in one call to the gradebook service.
+	 *
+	 * Both the grade and the comment are written for each student, so each definition must hold the full values to store.
+	 * There is no concurrency or no-change checking as there is in saveGrade, so only pass in the cells that have changed.
+	 *
+	 * @param assignmentId	id of the gradebook assignment
+	 * @param gradeDefinitions	the grades to save. Only the studentUid, grade and gradeComment are used.
+	 * @return true if the batch was saved, false if not
+	 */
+	public boolean saveGrades(final Long assignmentId, final List<GradeDefinition> gradeDefinitions) {
+		return this.saveGrades(this.getCurrentSiteId(), assignmentId, gradeDefinitions);
+	}
+
+	/**
+	 * Save a batch of grades and comments for a single assignment. If calling outside of GBNG, use this method as you can provide the site id.
+	 *
+	 * @param siteId	the siteId
+	 * @param assignmentId	id of the gradebook assignment
+	 * @param gradeDefinitions	the grades to save. Only the studentUid, grade and gradeComment are used.
+	 * @return true if the batch was saved, false if not
+	 */
+	public boolean saveGrades(final String siteId, final Long assignmentId, final List<GradeDefinition> gradeDefinitions) {
+
+		Gradebook gradebook = this.getGradebook(siteId);
+		if(gradebook == null) {
+			return false;
+		}
+
+		if(gradeDefinitions.isEmpty()) {
+			return true;
+		}
+
+		//standardise the grades the same way saveGrade does
+		for(GradeDefinition gradeDefinition: gradeDefinitions) {
+			gradeDefinition.setGrade(StringUtils.trimToNull(StringUtils.removeEnd(gradeDefinition.getGrade(), ".0")));
+		}
+
+		try {
+			this.gradebookService.saveGradesAndComments(gradebook.getUid(), assignmentId, gradeDefinitions);
+			
+			List<String> studentUuids = new ArrayList<>();
+			for(GradeDefinition gradeDefinition: gradeDefinitions) {
+				studentUuids.add(gradeDefinition.getStudentUid());
+			}
+			this.courseGradesChanged(gradebook, studentUuids);
+			this.invalidateAssignmentStatistics(gradebook, assignmentId);
+			this.invalidateGradeLog(assignmentId, studentUuids);
+			return true;
+		} catch (InvalidGradeException | GradebookNotFoundException | AssessmentNotFoundException e) {
+			log.error("An error occurred saving the grades. " + e.getClass() + ": " + e.getMessage());
+		}
+		return false;
+	}
+
+
 	/**
 	 * Build the matrix of assignments, students and grades for all students
 	 * 
@@ -356,70 +940,351 @@ public class GradebookNgBusinessService {
 	}
 	
 	/**
-	 * Build the matrix of assignments, students and grades for all students, with the specified sortOrder
+	 * Build the matrix of assignments, students and grades for all students, with the specified sortOrder
+	 * 
+	 * @param assignments list of assignments
+	 * @param sortOrder the sort order
+	 * @return
+	 */
+	public List<GbStudentGradeInfo> buildGradeMatrix(List<Assignment> assignments, GbAssignmentGradeSortOrder sortOrder) throws GbException {
+		return this.buildGradeMatrix(assignments, this.getGradeableUsers(), sortOrder);
+	}
+	
+	/**
+	 * Build the matrix of assignments and grades for the given users with the specified sort order
+	 * 
+	 * @param assignments list of assignments
+	 * @param list of uuids
+	 * @Param sortOrder the type of sort we want. Wraps assignmentId and direction.
+	 * @return
+	 */
+	public List<GbStudentGradeInfo> buildGradeMatrix(List<Assignment> assignments, List<String> studentUuids, GbAssignmentGradeSortOrder sortOrder) throws GbException {
+		return this.buildGradeMatrix(this.getCurrentSiteId(), assignments, studentUuids, sortOrder, null);
+	}
+	
+	/**
+	 * Build the matrix of assignments, students and grades for all students in the specified site.
+	 * If calling outside of GBNG, use this method as you can provide the site id.
+	 * 
+	 * @param siteId the siteId
+	 * @param assignments list of assignments
+	 * @return
+	 */
+	public List<GbStudentGradeInfo> buildGradeMatrix(String siteId, List<Assignment> assignments) throws GbException {
+		return this.buildGradeMatrix(siteId, assignments, this.getGradeableUsers(siteId), null, null);
+	}
+	
+	/**
+	 * Build the matrix of assignments, students and grades for the students in a section or group, with the specified sortOrder.
+	 * Only the members of the section or group are looked up and have their grades fetched.
+	 * 
+	 * @param assignments list of assignments
+	 * @param sortOrder the sort order
+	 * @param groupId the section eid or group id, or null for all students
+	 * @return
+	 */
+	public List<GbStudentGradeInfo> buildGradeMatrix(List<Assignment> assignments, GbAssignmentGradeSortOrder sortOrder, String groupId) throws GbException {
+		return this.buildGradeMatrix(assignments, sortOrder, null, groupId);
+	}
+	
+	/**
+	 * Build the matrix of assignments, students and grades for the students in a section or group.
+	 * The students are sorted by name, then by grade if there is a sortOrder.
+	 * 
+	 * @param assignments list of assignments
+	 * @param sortOrder the sort order, may be null
+	 * @param studentSortType the name to sort the students by, or null for last name
+	 * @param groupId the section eid or group id, or null for all students
+	 * @return
+	 */
+	public List<GbStudentGradeInfo> buildGradeMatrix(List<Assignment> assignments, GbAssignmentGradeSortOrder sortOrder, GbStudentSortType studentSortType, String groupId) throws GbException {
+		String siteId = this.getCurrentSiteId();
+		return this.buildGradeMatrix(siteId, assignments, this.getGradeableUsers(siteId, groupId), sortOrder, studentSortType);
+	}
+	
+	/**
+	 * Build the matrix of assignments, students and grades for the students in a section or group in the specified site.
+	 * If calling outside of GBNG, use this method as you can provide the site id.
+	 * 
+	 * @param siteId the siteId
+	 * @param assignments list of assignments
+	 * @param groupId the section eid or group id, or null for all students
+	 * @return
+	 */
+	public List<GbStudentGradeInfo> buildGradeMatrix(String siteId, List<Assignment> assignments, String groupId) throws GbException {
+		return this.buildGradeMatrix(siteId, assignments, this.getGradeableUsers(siteId, groupId), null, null);
+	}
+	
+	/**
+	 * Build the matrix of assignments and grades for the given users in the given site with the specified sort order.
+	 * The students are sorted by studentSortType, or last name if null.
+	 */
+	private List<GbStudentGradeInfo> buildGradeMatrix(String siteId, List<Assignment> assignments, List<String> studentUuids, GbAssignmentGradeSortOrder sortOrder, GbStudentSortType studentSortType) throws GbException {
+
+		StopWatch stopwatch = new StopWatch();
+		stopwatch.start();
+		Temp.timeWithContext("buildGradeMatrix", "buildGradeMatrix start", stopwatch.getTime());
+		
+		Gradebook gradebook = this.getGradebook(siteId);
+		if(gradebook == null) {
+			return null;
+		}
+		Temp.timeWithContext("buildGradeMatrix", "getGradebook", stopwatch.getTime());
+		
+		//get uuids as list of Users.
+		//this gives us our base list and will be sorted as per our desired sort method
+		List<GbUser> students = this.getUsers(studentUuids, (studentSortType != null) ? studentSortType : GbStudentSortType.LAST_NAME);
+		
+		//because this map is based on eid not uuid, we do the filtering later so we can save an iteration
+		//it is only worked out again if one of these students has had a grade change
+		Map<String,String> courseGrades = this.getCourseGrades(gradebook, studentUuids).grades;
+		Temp.timeWithContext("buildGradeMatrix", "getSiteCourseGrades", stopwatch.getTime());
+		
+		//setup a map as we progressively build this up by adding grades to a student's entry
+		Map<String, GbStudentGradeInfo> matrix = new LinkedHashMap<String, GbStudentGradeInfo>();
+		
+		//seed the map for all students so we can progresseively add grades to it
+		//also add the course grade here, to save an iteration later
+		for(GbUser student: students) {
+			
+			//create and add the user info
+			GbStudentGradeInfo sg = new GbStudentGradeInfo(student);
+
+			//add the course grade
+			sg.setCourseGrade(courseGrades.get(student.getEid()));
+			
+			//add to map so we can build on it later
+			matrix.put(student.getUserUuid(), sg);
+		}
+		Temp.timeWithContext("buildGradeMatrix", "matrix seeded", stopwatch.getTime());
+				
+		//add the grades for each assignment
+		this.addGradesToMatrix(gradebook, getAssignmentIds(assignments), studentUuids, matrix, false, stopwatch);
+		
+		//get the matrix as a list of GbStudentGradeInfo
+		ArrayList<GbStudentGradeInfo> items = new ArrayList<>(matrix.values());
+
+		//sort the matrix based on the supplied sort order (if any)
+		if(sortOrder != null) {
+			GradeComparator comparator = new GradeComparator();
+			comparator.setAssignmentId(sortOrder.getAssignmentId());
+			
+			SortDirection direction = sortOrder.getDirection();
+			
+			//sort
+			Collections.sort(items, comparator);
+			
+			//reverse if required
+			if(direction == SortDirection.DESCENDING) {
+				Collections.reverse(items);
+			}
+		}
+		
+		return items;
+	}
+	
+	/**
+	 * Load the grades for just the given assignments, and optionally just the given students.
+	 * This is for when only some columns are needed, ie to diff an import file that only has a few assignments in it.
+	 * Unlike buildGradeMatrix, the students are not sorted and course grades are not included.
+	 * 
+	 * @param assignmentIds the assignments to load grades for
+	 * @param studentUuids the students to load grades for, or null for all students in the site
+	 * @return the students and their grades for the given assignments, or null if no gradebook
+	 */
+	public List<GbStudentGradeInfo> getGrades(Collection<Long> assignmentIds, Collection<String> studentUuids) throws GbException {
+		
+		StopWatch stopwatch = new StopWatch();
+		stopwatch.start();
+		
+		Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return null;
+		}
+		
+		List<String> uuids = (studentUuids != null) ? new ArrayList<>(studentUuids) : this.getGradeableUsers();
+		
+		if(uuids == null || uuids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		Map<String, GbStudentGradeInfo> matrix = new LinkedHashMap<String, GbStudentGradeInfo>();
+		try {
+			for(GbUser student: userCache.getUsers(uuids)) {
+				matrix.put(student.getUserUuid(), new GbStudentGradeInfo(student));
+			}
+		} catch (RuntimeException e) {
+			//an LDAP exception can sometimes be thrown here, catch and rethrow
+			throw new GbException("An error occurred getting the list of users.", e);
+		}
+		
+		if(!assignmentIds.isEmpty()) {
+			//diffed against the comments in the file, so the comments are needed
+			this.addGradesToMatrix(gradebook, assignmentIds, uuids, matrix, true, stopwatch);
+		}
+		
+		return new ArrayList<>(matrix.values());
+	}
+	
+	/**
+	 * Get the grades, comments and course grade for a single student, for the student summary.
+	 * 
+	 * @param assignments list of assignments
+	 * @param studentUuid uuid of the student
+	 * @return the student's grade info, or null if there is no gradebook or no such user
+	 */
+	public GbStudentGradeInfo buildStudentSummary(List<Assignment> assignments, String studentUuid) throws GbException {
+		return this.buildStudentSummary(this.getCurrentSiteId(), assignments, studentUuid);
+	}
+	
+	/**
+	 * Get the grades, comments and course grade for a single student in the specified site. If calling outside of GBNG, use this method as you can provide the site id.
+	 * 
+	 * Unlike buildGradeMatrix, the grades are only fetched for this student, with their comments, and the course grade is from
+	 * the cache unless this student's grades have changed.
+	 * 
+	 * @param siteId the siteId
+	 * @param assignments list of assignments
+	 * @param studentUuid uuid of the student
+	 * @return the student's grade info, or null if there is no gradebook or no such user
+	 */
+	public GbStudentGradeInfo buildStudentSummary(String siteId, List<Assignment> assignments, String studentUuid) throws GbException {
+		
+		Gradebook gradebook = this.getGradebook(siteId);
+		if(gradebook == null) {
+			return null;
+		}
+		
+		GbUser student = userCache.getUser(studentUuid);
+		if(student == null) {
+			return null;
+		}
+		
+		GbStudentGradeInfo sg = new GbStudentGradeInfo(student);
+		sg.setCourseGrade(this.getCourseGrades(gradebook, Collections.singletonList(studentUuid)).grades.get(student.getEid()));
+		
+		if(assignments.isEmpty()) {
+			return sg;
+		}
+		
+		//the gradebook service has no call that returns grades with their comments for several items, so get each item's
+		//grade and comment for this student together rather than looking the comments up separately
+		try {
+			for(Long assignmentId: getAssignmentIds(assignments)) {
+				//only returns an entry if there is a grade for the student
+				List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(), assignmentId, Collections.singletonList(studentUuid));
+				for(GradeDefinition def: defs) {
+					sg.addGrade(assignmentId, new GbGradeInfo(def));
+				}
+			}
+		} catch (SecurityException e) {
+			//tried to access info for a user that we aren't allowed to get for
+			log.error("Error retrieving grades for student summary.", e);
+		}
+		
+		return sg;
+	}
+	
+	/**
+	 * Iterate the grade matrix for all students, loading the grades for a chunk of students at a time.
+	 * The students are in the same order as buildGradeMatrix, but only the current chunk of the matrix is held in memory.
+	 * Course grades are not included, so this is for streaming exports rather than for display.
 	 * 
 	 * @param assignments list of assignments
-	 * @param sortOrder the sort order
-	 * @return
+	 * @param chunkSize the number of students to load grades for at a time
+	 * @return an iterator over the matrix, empty if there is no gradebook
 	 */
-	public List<GbStudentGradeInfo> buildGradeMatrix(List<Assignment> assignments, GbAssignmentGradeSortOrder sortOrder) throws GbException {
-		return this.buildGradeMatrix(assignments, this.getGradeableUsers(), sortOrder);
+	public Iterator<GbStudentGradeInfo> iterateGradeMatrix(final List<Assignment> assignments, final int chunkSize) throws GbException {
+		
+		final Gradebook gradebook = this.getGradebook();
+		if(gradebook == null) {
+			return Collections.emptyIterator();
+		}
+		
+		//the users are needed up front so the whole export is in order, it is the grades that are loaded in chunks
+		final List<GbUser> students = this.getUsers(this.getGradeableUsers());
+		
+		return new Iterator<GbStudentGradeInfo>() {
+			
+			private int nextStudent = 0;
+			private Iterator<GbStudentGradeInfo> chunk = Collections.emptyIterator();
+			
+			@Override
+			public boolean hasNext() {
+				return this.chunk.hasNext() || this.nextStudent < students.size();
+			}
+			
+			@Override
+			public GbStudentGradeInfo next() {
+				if(!this.chunk.hasNext()) {
+					if(this.nextStudent >= students.size()) {
+						throw new NoSuchElementException();
+					}
+					List<GbUser> chunkStudents = students.subList(this.nextStudent, Math.min(this.nextStudent + chunkSize, students.size()));
+					this.nextStudent += chunkStudents.size();
+					this.chunk = buildGradeMatrixChunk(gradebook, assignments, chunkStudents);
+				}
+				return this.chunk.next();
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
 	}
 	
 	/**
-	 * Build the matrix of assignments and grades for the given users with the specified sort order
-	 * 
-	 * @param assignments list of assignments
-	 * @param list of uuids
-	 * @Param sortOrder the type of sort we want. Wraps assignmentId and direction.
-	 * @return
+	 * Build the part of the matrix for the given students, without course grades
 	 */
-	public List<GbStudentGradeInfo> buildGradeMatrix(List<Assignment> assignments, List<String> studentUuids, GbAssignmentGradeSortOrder sortOrder) throws GbException {
-
+	private Iterator<GbStudentGradeInfo> buildGradeMatrixChunk(Gradebook gradebook, List<Assignment> assignments, List<GbUser> students) {
+		
 		StopWatch stopwatch = new StopWatch();
 		stopwatch.start();
-		Temp.timeWithContext("buildGradeMatrix", "buildGradeMatrix start", stopwatch.getTime());
 		
-		Gradebook gradebook = this.getGradebook();
-		if(gradebook == null) {
-			return null;
+		Map<String, GbStudentGradeInfo> matrix = new LinkedHashMap<String, GbStudentGradeInfo>();
+		List<String> studentUuids = new ArrayList<>();
+		for(GbUser student: students) {
+			matrix.put(student.getUserUuid(), new GbStudentGradeInfo(student));
+			studentUuids.add(student.getUserUuid());
 		}
-		Temp.timeWithContext("buildGradeMatrix", "getGradebook", stopwatch.getTime());
 		
-		//get uuids as list of Users.
-		//this gives us our base list and will be sorted as per our desired sort method
-		List<User> students = this.getUsers(studentUuids);
+		//exported, so the comments are needed
+		this.addGradesToMatrix(gradebook, getAssignmentIds(assignments), studentUuids, matrix, true, stopwatch);
 		
-		//because this map is based on eid not uuid, we do the filtering later so we can save an iteration
-		Map<String,String> courseGrades = this.getSiteCourseGrades();
-		Temp.timeWithContext("buildGradeMatrix", "getSiteCourseGrades", stopwatch.getTime());
+		return matrix.values().iterator();
+	}
+	
+	/**
+	 * Helper to get the ids of a list of assignments
+	 */
+	private List<Long> getAssignmentIds(List<Assignment> assignments) {
+		List<Long> assignmentIds = new ArrayList<>();
+		for(Assignment assignment: assignments) {
+			assignmentIds.add(assignment.getId());
+		}
+		return assignmentIds;
+	}
+	
+	/**
+	 * Add the grades for each of the assignments to the matrix, which must already be seeded with the students.
+	 * The grade and comment strings are pooled for the build, as the same few values are repeated in most cells.
+	 * 
+	 * @param includeComments whether to keep the comment text. Without it the cells only record whether there is a comment,
+	 * which is all the grid needs, and the comment is fetched when it is opened
+	 */
+	private void addGradesToMatrix(Gradebook gradebook, Collection<Long> assignmentIds, List<String> studentUuids, Map<String, GbStudentGradeInfo> matrix, boolean includeComments, StopWatch stopwatch) {
 		
-		//setup a map as we progressively build this up by adding grades to a student's entry
-		Map<String, GbStudentGradeInfo> matrix = new LinkedHashMap<String, GbStudentGradeInfo>();
+		StringPool pool = new StringPool(this.stringPoolSize, STRING_POOL_MAX_LENGTH);
 		
-		//seed the map for all students so we can progresseively add grades to it
-		//also add the course grade here, to save an iteration later
-		for(User student: students) {
-			
-			//create and add the user info
-			GbStudentGradeInfo sg = new GbStudentGradeInfo(student);
-
-			//add the course grade
-			sg.setCourseGrade(courseGrades.get(student.getEid()));
-			
-			//add to map so we can build on it later
-			matrix.put(student.getId(), sg);
-		}
-		Temp.timeWithContext("buildGradeMatrix", "matrix seeded", stopwatch.getTime());
-				
 		//iterate over assignments and get the grades for each
 		//note, the returned list only includes entries where there is a grade for the user
 		//TODO maybe a new gb service method to do this, so we save iterating here?
-		for(Assignment assignment: assignments) {
+		for(Long assignmentId: assignmentIds) {
 			
 			try {
-				List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(), assignment.getId(), studentUuids);
-				Temp.timeWithContext("buildGradeMatrix", "getGradesForStudentsForItem: " + assignment.getId(), stopwatch.getTime());
+				List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(), assignmentId, studentUuids);
+				Temp.timeWithContext("buildGradeMatrix", "getGradesForStudentsForItem: " + assignmentId, stopwatch.getTime());
 		
 				//iterate the definitions returned and update the record for each student with any grades
 				for(GradeDefinition def: defs) {
@@ -429,37 +1294,17 @@ public class GradebookNgBusinessService {
 						log.warn("No matrix entry seeded for: " + def.getStudentUid() + ". This user may be been removed from the site");
 					} else {
 					
-						sg.addGrade(assignment.getId(), new GbGradeInfo(def));
+						sg.addGrade(assignmentId, new GbGradeInfo(def, pool, includeComments));
 					}
 				}
-				Temp.timeWithContext("buildGradeMatrix", "updatedStudentGradeInfo: " + assignment.getId(), stopwatch.getTime());
+				Temp.timeWithContext("buildGradeMatrix", "updatedStudentGradeInfo: " + assignmentId, stopwatch.getTime());
 			} catch (SecurityException e) {
 				//tried to access info for a user that we aren't allowed to get for. Skip this user.
 				//consider rethrowing this? Or should the UI not care.
 				log.error("Error retrieving grades. Skipping.", e);
 			}
 		}
-		
-		//get the matrix as a list of GbStudentGradeInfo
-		ArrayList<GbStudentGradeInfo> items = new ArrayList<>(matrix.values());
-
-		//sort the matrix based on the supplied sort order (if any)
-		if(sortOrder != null) {
-			GradeComparator comparator = new GradeComparator();
-			comparator.setAssignmentId(sortOrder.getAssignmentId());
-			
-			SortDirection direction = sortOrder.getDirection();
-			
-			//sort
-			Collections.sort(items, comparator);
-			
-			//reverse if required
-			if(direction == SortDirection.DESCENDING) {
-				Collections.reverse(items);
-			}
-		}
-		
-		return items;
+		Temp.timeWithContext("buildGradeMatrix", "pooled strings: " + pool.size(), stopwatch.getTime());
 	}
 	
 	/**
@@ -469,39 +1314,100 @@ public class GradebookNgBusinessService {
 	public List<GbGroup> getSiteSectionsAndGroups() {
 		String siteId = this.getCurrentSiteId();
 		
-		List<GbGroup> rval = new ArrayList<>();
+		List<GbGroup> rval = new ArrayList<>(this.getMembershipIndex(siteId).getGroups());
+		
+		//add the default ALL (this is a UI thing, it might not be appropriate here)
+		//TODO also need to internationalse ths string
+		rval.add(0, new GbGroup(null, "All Sections/Groups", GbGroupType.ALL));
+		
+		return rval;
+		
+	}
+	
+	/**
+	 * Get the sections and groups in a site and their members. This is cached per site
+	 * so course management and the site groups are not queried on every page load.
+	 * 
+	 * @param siteId the siteId
+	 * @return
+	 */
+	public GbMembershipIndex getMembershipIndex(String siteId) {
+		GbMembershipIndex index = (GbMembershipIndex) membershipCache.get(siteId);
+		if(index == null) {
+			index = this.buildMembershipIndex(siteId);
+			membershipCache.put(siteId, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * Look up the sections and groups in a site and their members
+	 * 
+	 * @param siteId the siteId
+	 * @return
+	 */
+	private GbMembershipIndex buildMembershipIndex(String siteId) {
+		
+		GbMembershipIndex index = new GbMembershipIndex();
+		
+		Site site = null;
+		try {
+			site = siteService.getSite(siteId);
+		} catch (IdUnusedException e) {
+			//essentially ignore and use what we have
+			log.error("Error retrieving groups", e);
+		}
 		
 		//get sections
 		try {
 			Set<Section> sections = courseManagementService.getSections(siteId);
 			for(Section section: sections){
-				rval.add(new GbGroup(section.getEid(), section.getTitle(), GbGroupType.SECTION));
+				index.add(new GbGroup(section.getEid(), section.getTitle(), GbGroupType.SECTION), this.getSectionMembers(site, section.getEid()));
 			}
 		} catch (IdNotFoundException e) {
 			//not a course site or no sections, ignore
 		}
 		
 		//get groups
-		try {			
-			Site site = siteService.getSite(siteId);
-			Collection<Group> groups = site.getGroups();
-
-			for(Group group: groups) {
-				rval.add(new GbGroup(group.getId(), group.getTitle(), GbGroupType.GROUP));
+		if(site != null) {
+			for(Group group: site.getGroups()) {
+				index.add(new GbGroup(group.getId(), group.getTitle(), GbGroupType.GROUP), new HashSet<String>(group.getUsers()));
 			}
-		} catch (IdUnusedException e) {
-			//essentially ignore and use what we have
-			log.error("Error retrieving groups", e);
 		}
 		
-		Collections.sort(rval);
+		index.sort();
 		
-		//add the default ALL (this is a UI thing, it might not be appropriate here)
-		//TODO also need to internationalse ths string
-		rval.add(0, new GbGroup(null, "All Sections/Groups", GbGroupType.ALL));
+		return index;
+	}
+	
+	/**
+	 * Get the members of a section as uuids.
+	 * If the section is provided to the site, its group already has the members as uuids. Otherwise they are looked up
+	 * from course management, which has them as eids.
+	 * 
+	 * @param site the site, may be null
+	 * @param sectionEid the section eid
+	 * @return
+	 */
+	private Set<String> getSectionMembers(Site site, String sectionEid) {
+		if(site != null) {
+			for(Group group: site.getGroups()) {
+				if(StringUtils.equals(group.getProviderGroupId(), sectionEid)) {
+					return new HashSet<String>(group.getUsers());
+				}
+			}
+		}
 		
-		return rval;
+		Set<String> eids = new HashSet<>();
+		for(Membership membership: courseManagementService.getSectionMemberships(sectionEid)) {
+			eids.add(membership.getUserId());
+		}
 		
+		Set<String> uuids = new HashSet<>();
+		for(User user: userDirectoryService.getUsersByEids(eids)) {
+			uuids.add(user.getId());
+		}
+		return uuids;
 	}
 	
 	/**
@@ -570,15 +1476,29 @@ public class GradebookNgBusinessService {
     /**
      * Add a new assignment definition to the gradebook
      * @param assignment
+     * @return the id of the new assignment, or null if there is no gradebook
+     */
+    public Long addAssignment(Assignment assignment) {
+        return this.addAssignment(this.getCurrentSiteId(), assignment);
+    }
+
+    /**
+     * Add a new assignment definition to the gradebook. If calling outside of GBNG, use this method as you can provide the site id.
+     * @param siteId the siteId
+     * @param assignment
+     * @return the id of the new assignment, or null if there is no gradebook
      */
-    public void addAssignment(Assignment assignment) {
-        Gradebook gradebook = getGradebook();
+    public Long addAssignment(String siteId, Assignment assignment) {
+        Gradebook gradebook = getGradebook(siteId);
         if(gradebook != null) {
             String gradebookId = gradebook.getUid();
-            this.gradebookService.addAssignment(gradebookId, assignment);
-            
+            Long assignmentId = this.gradebookService.addAssignment(gradebookId, assignment);
+            this.invalidateCourseGrades(gradebook);
+            return assignmentId;
+
             //TODO wrap this so we can catch any runtime exceptions
         }
+        return null;
     }
     
     /**
@@ -836,26 +1756,28 @@ public class GradebookNgBusinessService {
   }
 
 
-  /**
-    * Comparator class for sorting a list of users by last name
-    */
-    class LastNameComparator implements Comparator<User> {
+    /**
+     * Comparator class for sorting a list of users by name, using sort keys for the locale so that names are in the
+     * right order for the language rather than by character code. The keys are kept with each cached user so are only made once.
+     */
+    class StudentNameComparator implements Comparator<GbUser> {
+    	
+    	private final GbStudentSortType sortType;
+    	private final Locale locale;
+    	private final Collator collator;
+    	
+    	StudentNameComparator(GbStudentSortType sortType, Locale locale) {
+    		this.sortType = sortType;
+    		this.locale = locale;
+    		this.collator = getCollator(locale);
+    	}
+    	
 	    @Override
-	    public int compare(User u1, User u2) {
-	    	return u1.getLastName().compareTo(u2.getLastName());
+	    public int compare(GbUser u1, GbUser u2) {
+	    	return u1.getSortKey(this.sortType, this.locale, this.collator).compareTo(u2.getSortKey(this.sortType, this.locale, this.collator));
 	    }
     }
     
-    /**
-     * Comparator class for sorting a list of users by first name
-     */
-     class FirstNameComparator implements Comparator<User> {
- 	    @Override
- 	    public int compare(User u1, User u2) {
- 	    	return u1.getFirstName().compareTo(u2.getFirstName());
- 	    }
-     }
-    
      /**
       * Push a an notification into the cache that someone is editing this gradebook.
       * We store one entry in the cache per gradebook. This allows fast lookup for a given gradebookUid.
@@ -1009,6 +1931,8 @@ public class GradebookNgBusinessService {
     	 
     	 try {
     		 gradebookService.updateAssignment(gradebook.getUid(), original.getId(), assignment);
+    		 this.invalidateCourseGrades(gradebook);
+    		 this.invalidateAssignmentStatistics(gradebook, original.getId());
     		 return true;
     	 } catch (Exception e) {
     		 log.error("An error occurred updating the assignment", e);
@@ -1059,6 +1983,11 @@ public class GradebookNgBusinessService {
 	    	 return true;
     	 } catch (Exception e) {
     		 log.error("An error occurred updating the assignment", e);
+    	 } finally {
+    		 //some may have been saved even if it failed part way
+    		 this.courseGradesChanged(gradebook, studentUuids);
+    		 this.invalidateAssignmentStatistics(gradebook, assignmentId);
+    		 this.invalidateGradeLog(assignmentId, studentUuids);
     	 }
     	 
 		 return false;
@@ -1072,12 +2001,7 @@ public class GradebookNgBusinessService {
       * @return
       */
      public List<GbGradeLog> getGradeLog(final String studentUuid, final long assignmentId) {
-    	 List<GradingEvent> gradingEvents = this.gradebookService.getGradingEvents(studentUuid, assignmentId);
-    	 
-    	 List<GbGradeLog> rval = new ArrayList<>();
-    	 for(GradingEvent ge: gradingEvents) {
-    		 rval.add(new GbGradeLog(ge));
-    	 }
+    	 List<GbGradeLog> rval = new ArrayList<>(this.getGradeLogEntries(studentUuid, assignmentId));
     	 
     	 Collections.reverse(rval);
     	 
@@ -1085,17 +2009,127 @@ public class GradebookNgBusinessService {
      }
      
      /**
-      * Get the user given a uuid
+      * Get a page of the grade log for the given student and assignment, newest first, along with the graders of the entries in the page.
+      * The graders are looked up together rather than one at a time.
+      * 
+      * @param studentUuid
+      * @param assignmentId
+      * @param cursor the nextCursor from the previous page, or null for the first page
+      * @param pageSize maximum number of entries in the page
+      * @return
+      */
+     public GbGradeLogPage getGradeLog(final String studentUuid, final long assignmentId, final Integer cursor, final int pageSize) {
+    	 List<GbGradeLog> gradeLog = this.getGradeLogEntries(studentUuid, assignmentId);
+    	 
+    	 //the log is held oldest first, and the cursor is the index to page back from
+    	 int end = (cursor != null) ? Math.max(0, Math.min(cursor, gradeLog.size())) : gradeLog.size();
+    	 int start = Math.max(0, end - pageSize);
+    	 
+    	 List<GbGradeLog> entries = new ArrayList<>(gradeLog.subList(start, end));
+    	 Collections.reverse(entries);
+    	 
+    	 Set<String> graderUuids = new HashSet<>();
+    	 for(GbGradeLog entry: entries) {
+    		 graderUuids.add(entry.getGraderUuid());
+    	 }
+    	 Map<String, GbUser> graders = new HashMap<>();
+    	 for(GbUser grader: userCache.getUsers(graderUuids)) {
+    		 graders.put(grader.getUserUuid(), grader);
+    	 }
+    	 
+    	 return new GbGradeLogPage(entries, graders, (start > 0) ? start : null);
+     }
+     
+     /**
+      * Get the grade log for a cell, oldest first. This is cached so that paging through it doesn't fetch it again.
+      */
+     private List<GbGradeLog> getGradeLogEntries(final String studentUuid, final long assignmentId) {
+    	 String key = getGradeLogKey(assignmentId, studentUuid);
+    	 
+    	 GradeLog gradeLog = (GradeLog) gradeLogCache.get(key);
+    	 if(gradeLog == null || gradeLog.isExpired(this.gradeLogTtl)) {
+    		 List<GradingEvent> gradingEvents = this.gradebookService.getGradingEvents(studentUuid, assignmentId);
+    		 
+    		 List<GbGradeLog> entries = new ArrayList<>(gradingEvents.size());
+    		 for(GradingEvent ge: gradingEvents) {
+    			 entries.add(new GbGradeLog(ge));
+    		 }
+    		 
+    		 gradeLog = new GradeLog(entries);
+    		 gradeLogCache.put(key, gradeLog);
+    	 }
+    	 return Collections.unmodifiableList(gradeLog.entries);
+     }
+     
+     /**
+      * Clear the cached grade log for some cells of an assignment, for when they are graded
+      */
+     private void invalidateGradeLog(final Long assignmentId, final Collection<String> studentUuids) {
+    	 for(String studentUuid: studentUuids) {
+    		 gradeLogCache.remove(getGradeLogKey(assignmentId, studentUuid));
+    	 }
+     }
+     
+     private static String getGradeLogKey(final long assignmentId, final String studentUuid) {
+    	 return assignmentId + ":" + studentUuid;
+     }
+     
+     /**
+      * Get the user given a uuid. This comes from the user cache
       * @param userUuid
       * @return GbUser or null if cannot be found
       */
      public GbUser getUser(String userUuid) {
-    	 try {
-    		 User u = userDirectoryService.getUser(userUuid);
-    		 return new GbUser(u);
-    	 } catch (UserNotDefinedException e) {
-    		return null; 
+    	 return userCache.getUser(userUuid);
+     }
+     
+     /**
+      * Get which cells of the given assignments have a comment, for the gradeable users in the specified site.
+      * Only the flags are returned, the text of a comment is fetched with getAssignmentGradeComment when it is opened.
+      * 
+      * The gradebook service has no call for the comments of a whole gradebook, so this is one query per assignment.
+      * 
+      * @param siteId the siteId
+      * @param assignmentIds the assignments, in the column order wanted
+      * @return the index, empty if there are no gradeable users, or null if there is no gradebook
+      */
+     public GbCommentIndex getCommentIndex(final String siteId, final List<Long> assignmentIds) {
+    	 
+    	 Gradebook gradebook = getGradebook(siteId);
+    	 if(gradebook == null) {
+    		 return null;
+    	 }
+    	 
+    	 List<String> studentUuids = this.getGradeableUsers(siteId);
+    	 if(studentUuids == null) {
+    		 studentUuids = new ArrayList<>();
+    	 }
+    	 GbCommentIndex index = new GbCommentIndex(assignmentIds, studentUuids);
+    	 if(studentUuids.isEmpty()) {
+    		 return index;
+    	 }
+    	 
+    	 Map<String, Integer> rows = new HashMap<>();
+    	 for(int row = 0; row < studentUuids.size(); row++) {
+    		 rows.put(studentUuids.get(row), row);
+    	 }
+    	 
+    	 for(int col = 0; col < assignmentIds.size(); col++) {
+    		 try {
+    			 List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(), assignmentIds.get(col), studentUuids);
+    			 for(GradeDefinition def: defs) {
+    				 Integer row = rows.get(def.getStudentUid());
+    				 if(row != null && StringUtils.isNotBlank(def.getGradeComment())) {
+    					 index.setHasComment(col, row);
+    				 }
+    			 }
+    		 } catch (SecurityException e) {
+    			 //tried to access info for a user that we aren't allowed to get for. Skip this assignment.
+    			 log.error("Error retrieving comments. Skipping.", e);
+    		 }
     	 }
+    	 
+    	 return index;
      }
      
      /**
@@ -1106,9 +2140,23 @@ public class GradebookNgBusinessService {
       * @return the comment or null if none
       */
      public String getAssignmentGradeComment(final long assignmentId, final String studentUuid){
+    	 return this.getAssignmentGradeComment(this.getCurrentSiteId(), assignmentId, studentUuid);
+     }
+     
+     /**
+      * Get the comment for a given student assignment grade in the specified site. If calling outside of GBNG, use this method as you can provide the site id.
+      * 
+      * @param siteId the siteId
+      * @param assignmentId id of assignment
+      * @param studentUuid uuid of student
+      * @return the comment or null if none
+      */
+     public String getAssignmentGradeComment(final String siteId, final long assignmentId, final String studentUuid){
     	 
-    	 String siteId = this.getCurrentSiteId();
     	 Gradebook gradebook = getGradebook(siteId);
+    	 if(gradebook == null) {
+    		 return null;
+    	 }
     	 
     	 try {
         	 CommentDefinition def = this.gradebookService.getAssignmentScoreComment(gradebook.getUid(), assignmentId, studentUuid);
@@ -1179,6 +2227,67 @@ public class GradebookNgBusinessService {
     	return studentUuid + "-" + assignmentId;
     }
     
+    /**
+     * The course grades for a gradebook, as held in the course grade cache. Keyed on student eid.
+     * Loaded is when they were started to be worked out, so that grades saved while that was happening count as changes.
+     */
+    private static class CourseGrades implements Serializable {
+    	
+    	private static final long serialVersionUID = 1L;
+    	
+    	private final HashMap<String, String> grades;
+    	private final long loaded;
+    	
+    	CourseGrades(Map<String, String> grades, long loaded) {
+    		this.grades = (grades != null) ? new HashMap<>(grades) : new HashMap<String, String>();
+    		this.loaded = loaded;
+    	}
+    	
+    	boolean isExpired(long ttl) {
+    		return System.currentTimeMillis() - this.loaded > ttl;
+    	}
+    }
+    
+    /**
+     * The grade log for a cell, oldest first, and when it was looked up, as held in the grade log cache
+     */
+    private static class GradeLog implements Serializable {
+    	
+    	private static final long serialVersionUID = 1L;
+    	
+    	private final ArrayList<GbGradeLog> entries;
+    	private final long loaded;
+    	
+    	GradeLog(List<GbGradeLog> entries) {
+    		this.entries = new ArrayList<>(entries);
+    		this.loaded = System.currentTimeMillis();
+    	}
+    	
+    	boolean isExpired(long ttl) {
+    		return System.currentTimeMillis() - this.loaded > ttl;
+    	}
+    }
+    
+    /**
+     * The gradeable users in a site and when they were looked up, as held in the roster cache
+     */
+    private static class Roster implements Serializable {
+    	
+    	private static final long serialVersionUID = 1L;
+    	
+    	private final ArrayList<String> userUuids;
+    	private final long loaded;
+    	
+    	Roster(Set<String> userUuids) {
+    		this.userUuids = new ArrayList<>(userUuids);
+    		this.loaded = System.currentTimeMillis();
+    	}
+    	
+    	boolean isExpired(long ttl) {
+    		return System.currentTimeMillis() - this.loaded > ttl;
+    	}
+    }
+    
     /**
      * Comparator class for sorting an assignment by the grades
      * Note that this must have the assignmentId set into it so we can extract the appropriate grade entry from the map that each student has
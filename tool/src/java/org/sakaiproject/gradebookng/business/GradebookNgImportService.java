@@ -0,0 +1,311 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.apache.commons.lang.StringUtils;
+import org.sakaiproject.gradebookng.business.model.GbImportJob;
+import org.sakaiproject.gradebookng.business.model.ProcessedGradeItem;
+import org.sakaiproject.gradebookng.business.model.ProcessedGradeItemDetail;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+import org.sakaiproject.service.gradebook.shared.GradeDefinition;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+import org.sakaiproject.user.api.User;
+
+/**
+ * Runs grade imports as background jobs so that a large import doesn't tie up (or time out) the request thread.
+ *
+ * Each job writes its grades in chunks, and records a checkpoint after each chunk is committed. A job that fails part way
+ * through, for example on a database error, can be resumed and will carry on from the last checkpoint rather than starting again.
+ * A chunk that is rejected, ie because one of its grades is invalid, is written again a row at a time so that only the
+ * bad rows are counted as errors, and the last of them is recorded on the job.
+ *
+ * Jobs are held in memory on the node that ran them, and are discarded some time after they finish.
+ */
+@CommonsLog
+public class GradebookNgImportService {
+
+	@Setter
+	private GradebookNgBusinessService businessService;
+
+	@Setter
+	private SessionManager sessionManager;
+
+	@Setter
+	private ThreadLocalManager threadLocalManager;
+
+	@Setter
+	private GradebookNgAnalyticsService analyticsService;
+
+	/**
+	 * Number of rows written per call to the gradebook service
+	 */
+	@Setter
+	private int chunkSize = 100;
+
+	/**
+	 * Number of imports that can run at once
+	 */
+	@Setter
+	private int poolSize = 2;
+
+	/**
+	 * How long a finished job is kept for so its outcome can be checked, in ms
+	 */
+	@Setter
+	private long retention = 60 * 60 * 1000;
+
+	private ExecutorService executor;
+	private final Map<String, ImportWork> jobs = new ConcurrentHashMap<>();
+
+	public void init() {
+		this.executor = Executors.newFixedThreadPool(this.poolSize, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gradebookng-import-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public void destroy() {
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Submit an import to run in the background as the current user
+	 *
+	 * @param siteId the site to import into
+	 * @param assignmentsToCreate new gradebook items to create before the grades are written
+	 * @param items the items whose grades are to be written. Only the rows with a change are written.
+	 * @return the job, which can be used to track progress
+	 */
+	public GbImportJob submit(String siteId, List<Assignment> assignmentsToCreate, List<ProcessedGradeItem> items) {
+
+		purgeFinishedJobs();
+
+		int totalRows = 0;
+		for(ProcessedGradeItem item: items) {
+			totalRows += item.getProcessedGradeItemDetails().size();
+		}
+
+		User currentUser = this.businessService.getCurrentUser();
+		GbImportJob job = new GbImportJob(UUID.randomUUID().toString(), siteId, currentUser.getId(), totalRows);
+
+		ImportWork work = new ImportWork(job, currentUser.getEid(), new ArrayList<>(assignmentsToCreate), new ArrayList<>(items));
+		this.jobs.put(job.getJobId(), work);
+		this.executor.execute(work);
+
+		log.info("Submitted import job " + job.getJobId() + " for site " + siteId + ", " + totalRows + " rows");
+		return job;
+	}
+
+	/**
+	 * Resume a failed job from its last checkpoint
+	 *
+	 * @param jobId
+	 * @return true if the job was resubmitted, false if it doesn't exist or hasn't failed
+	 */
+	public boolean resume(String jobId) {
+		ImportWork work = this.jobs.get(jobId);
+		if(work == null) {
+			return false;
+		}
+		synchronized(work) {
+			if(work.job.getStatus() != GbImportJob.Status.FAILED) {
+				return false;
+			}
+			work.job.setStatus(GbImportJob.Status.QUEUED);
+		}
+		log.info("Resuming import job " + jobId + " from item " + work.job.getCheckpointItem() + ", row " + work.job.getCheckpointRow());
+		this.executor.execute(work);
+		return true;
+	}
+
+	/**
+	 * Get the progress of a job
+	 *
+	 * @param jobId
+	 * @return the job or null if there is no such job (or it has been discarded)
+	 */
+	public GbImportJob getJob(String jobId) {
+		ImportWork work = this.jobs.get(jobId);
+		return (work != null) ? work.job : null;
+	}
+
+	/**
+	 * Remove any jobs that finished longer ago than the retention period
+	 */
+	private void purgeFinishedJobs() {
+		long cutoff = System.currentTimeMillis() - this.retention;
+		Iterator<ImportWork> iter = this.jobs.values().iterator();
+		while(iter.hasNext()) {
+			GbImportJob job = iter.next().job;
+			if(job.isFinished() && job.getEndTime() < cutoff) {
+				iter.remove();
+			}
+		}
+	}
+
+	/**
+	 * The work for a job, and the grades it is importing
+	 */
+	private class ImportWork implements Runnable {
+
+		private final GbImportJob job;
+		private final String userEid;
+		private final List<Assignment> assignmentsToCreate;
+		private final List<ProcessedGradeItem> items;
+
+		//new items already created, by name, so a resumed job doesn't create them again
+		private final Map<String, Long> createdAssignmentIds = new HashMap<>();
+
+		ImportWork(GbImportJob job, String userEid, List<Assignment> assignmentsToCreate, List<ProcessedGradeItem> items) {
+			this.job = job;
+			this.userEid = userEid;
+			this.assignmentsToCreate = assignmentsToCreate;
+			this.items = items;
+		}
+
+		@Override
+		public void run() {
+
+			job.setStatus(GbImportJob.Status.RUNNING);
+			job.setStartTime(System.currentTimeMillis());
+			job.setStartRow(job.getRowsProcessed());
+			job.setEndTime(0);
+
+			//the gradebook service checks permissions against the session user, so run as the user that submitted the job.
+			//pool threads are reused, so each job gets its own session and nothing is left on the thread for the next one
+			threadLocalManager.clear();
+			Session session = sessionManager.startSession();
+			session.setUserId(job.getUserId());
+			session.setUserEid(this.userEid);
+			sessionManager.setCurrentSession(session);
+
+			try {
+				createAssignments();
+
+				while(job.getCheckpointItem() < this.items.size()) {
+					writeItem(this.items.get(job.getCheckpointItem()));
+
+					job.setCheckpointItem(job.getCheckpointItem() + 1);
+					job.setCheckpointRow(0);
+				}
+
+				job.setStatus(GbImportJob.Status.COMPLETE);
+				log.info("Import job " + job.getJobId() + " complete. Processed: " + job.getRowsProcessed() + ", written: " + job.getRowsWritten() + ", errors: " + job.getErrors());
+
+				//a finished job is kept for its counters only, it can't be resumed so the grades don't need to be held until it is purged
+				this.items.clear();
+				this.assignmentsToCreate.clear();
+				this.createdAssignmentIds.clear();
+
+				//the import changes a lot of grades at once, so have the analytics ready for the next dashboard load.
+				//this is queued as the job's user, and is guarded so that a problem with it can't mark the finished job as failed
+				try {
+					analyticsService.refresh(job.getSiteId());
+				} catch (RuntimeException e) {
+					log.warn("Could not queue an analytics refresh for site " + job.getSiteId(), e);
+				}
+
+			} catch (RuntimeException e) {
+				log.error("Import job " + job.getJobId() + " failed at item " + job.getCheckpointItem() + ", row " + job.getCheckpointRow(), e);
+				job.setLastError(e.getClass().getSimpleName() + ": " + e.getMessage());
+				job.setStatus(GbImportJob.Status.FAILED);
+			} finally {
+				job.setEndTime(System.currentTimeMillis());
+				session.invalidate();
+				threadLocalManager.clear();
+			}
+		}
+
+		private void createAssignments() {
+			for(Assignment assignment: this.assignmentsToCreate) {
+				if(!this.createdAssignmentIds.containsKey(assignment.getName())) {
+					this.createdAssignmentIds.put(assignment.getName(), businessService.addAssignment(job.getSiteId(), assignment));
+				}
+			}
+		}
+
+		/**
+		 * Write the changed rows of an item in chunks, starting from the checkpoint
+		 */
+		private void writeItem(ProcessedGradeItem item) {
+			List<ProcessedGradeItemDetail> details = item.getProcessedGradeItemDetails();
+
+			Long assignmentId = item.getItemId();
+			if(assignmentId == null) {
+				assignmentId = this.createdAssignmentIds.get(item.getItemTitle());
+			}
+			if(assignmentId == null) {
+				log.warn("No gradebook item for " + item.getItemTitle() + ", skipping its grades");
+				int remaining = details.size() - job.getCheckpointRow();
+				job.setErrors(job.getErrors() + remaining);
+				job.setRowsProcessed(job.getRowsProcessed() + remaining);
+				return;
+			}
+
+			while(job.getCheckpointRow() < details.size()) {
+				int end = Math.min(job.getCheckpointRow() + chunkSize, details.size());
+
+				List<ProcessedGradeItemDetail> changed = new ArrayList<>();
+				List<GradeDefinition> chunk = new ArrayList<>();
+				for(ProcessedGradeItemDetail detail: details.subList(job.getCheckpointRow(), end)) {
+					if(detail.getChangeType() == ProcessedGradeItemDetail.ChangeType.UNKNOWN_STUDENT) {
+						job.setErrors(job.getErrors() + 1);
+						job.setLastError("Student " + detail.getStudentEid() + " is not in the site, their grade for " + item.getItemTitle() + " was skipped");
+					} else if(detail.getChangeType() != ProcessedGradeItemDetail.ChangeType.UNCHANGED) {
+						changed.add(detail);
+						chunk.add(toGradeDefinition(detail));
+					}
+				}
+
+				//a database failure throws and leaves the checkpoint at the start of this chunk
+				if(businessService.saveGrades(job.getSiteId(), assignmentId, chunk)) {
+					job.setRowsWritten(job.getRowsWritten() + chunk.size());
+				} else {
+					//the whole chunk is rejected if any grade in it is invalid, so find which ones by saving each on its own
+					for(int i = 0; i < chunk.size(); i++) {
+						if(businessService.saveGrades(job.getSiteId(), assignmentId, Collections.singletonList(chunk.get(i)))) {
+							job.setRowsWritten(job.getRowsWritten() + 1);
+						} else {
+							job.setErrors(job.getErrors() + 1);
+							job.setLastError("Grade " + changed.get(i).getGrade() + " for " + changed.get(i).getStudentEid() + " in " + item.getItemTitle() + " could not be saved");
+						}
+					}
+				}
+
+				job.setRowsProcessed(job.getRowsProcessed() + (end - job.getCheckpointRow()));
+				job.setCheckpointRow(end);
+			}
+		}
+	}
+
+	private static GradeDefinition toGradeDefinition(ProcessedGradeItemDetail detail) {
+		GradeDefinition gradeDefinition = new GradeDefinition();
+		gradeDefinition.setStudentUid(detail.getStudentUuid());
+		gradeDefinition.setGrade(detail.getGrade());
+		gradeDefinition.setGradeComment(StringUtils.trimToNull(detail.getComment()));
+		return gradeDefinition;
+	}
+
+}
@@ -0,0 +1,276 @@
+package org.sakaiproject.gradebookng.business;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.sakaiproject.gradebookng.business.exception.GbException;
+import org.sakaiproject.gradebookng.business.model.GbUser;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+
+/**
+ * Caches the details of users that the gradebook displays, so that the user directory (and any provider behind it, eg LDAP)
+ * is not called for the whole roster on every page load.
+ *
+ * Users that aren't cached are looked up in batches, a few batches at a time. Users that have been cached for a while are
+ * still returned straight away, and are looked up again in the background so that changes in the directory are picked up.
+ * The background lookups have their own thread and a bounded queue, so they never hold up a lookup that a page is waiting on.
+ */
+@CommonsLog
+public class GradebookNgUserCache {
+
+	private static final String CACHE_NAME = "org.sakaiproject.gradebookng.cache.users";
+
+	@Setter
+	private UserDirectoryService userDirectoryService;
+
+	@Setter
+	private MemoryService memoryService;
+
+	@Setter
+	private ThreadLocalManager threadLocalManager;
+
+	/**
+	 * Number of users looked up per call to the user directory
+	 */
+	@Setter
+	private int batchSize = 200;
+
+	/**
+	 * Number of batches that can be looked up at once
+	 */
+	@Setter
+	private int poolSize = 4;
+
+	/**
+	 * How long a user is cached before they are looked up again in the background, in ms
+	 */
+	@Setter
+	private long refreshAfter = 10 * 60 * 1000;
+
+	/**
+	 * Number of batches that can be waiting to be looked up again in the background. Any more are dropped, and are
+	 * looked up again the next time they are asked for.
+	 */
+	@Setter
+	private int refreshQueueSize = 20;
+
+	private Cache cache;
+	private ExecutorService executor;
+	private ExecutorService refreshExecutor;
+
+	//users that are queued to be looked up again, so that each is only queued once
+	private final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	public void init() {
+		this.cache = this.memoryService.getCache(CACHE_NAME);
+		if(this.cache == null) {
+			this.cache = this.memoryService.createCache(CACHE_NAME, null);
+		}
+
+		this.executor = Executors.newFixedThreadPool(this.poolSize, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gradebookng-users-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		this.refreshExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(this.refreshQueueSize), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "gradebookng-users-refresh");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public void destroy() {
+		this.executor.shutdownNow();
+		this.refreshExecutor.shutdownNow();
+	}
+
+	/**
+	 * Get a user
+	 *
+	 * @param userUuid the uuid
+	 * @return the user or null if they cannot be found
+	 */
+	public GbUser getUser(String userUuid) {
+		List<GbUser> users = getUsers(Collections.singletonList(userUuid));
+		return users.isEmpty() ? null : users.get(0);
+	}
+
+	/**
+	 * Get the users for a list of uuids. Users that cannot be found are left out.
+	 *
+	 * @param userUuids the uuids
+	 * @return the users, in no particular order
+	 * @throws GbException if the user directory could not be reached
+	 */
+	public List<GbUser> getUsers(Collection<String> userUuids) throws GbException {
+		List<GbUser> rval = new ArrayList<>(userUuids.size());
+		List<String> missing = new ArrayList<>();
+		List<String> stale = new ArrayList<>();
+
+		long now = System.currentTimeMillis();
+		for(String userUuid: userUuids) {
+			CachedUser cached = (CachedUser) this.cache.get(userUuid);
+			if(cached == null) {
+				missing.add(userUuid);
+			} else {
+				rval.add(cached.user);
+				if(now - cached.loaded > this.refreshAfter) {
+					stale.add(userUuid);
+				}
+			}
+		}
+
+		if(!missing.isEmpty()) {
+			rval.addAll(lookup(missing));
+		}
+		if(!stale.isEmpty()) {
+			refresh(stale);
+		}
+
+		return rval;
+	}
+
+	/**
+	 * Look up users that aren't cached. Only the batches beyond the first are handed to the pool, so small lookups stay on this thread.
+	 */
+	private List<GbUser> lookup(List<String> userUuids) {
+		List<List<String>> batches = partition(userUuids);
+
+		List<Future<List<GbUser>>> futures = new ArrayList<>();
+		for(final List<String> batch: batches.subList(1, batches.size())) {
+			futures.add(this.executor.submit(new Callable<List<GbUser>>() {
+				@Override
+				public List<GbUser> call() {
+					try {
+						return lookupBatch(batch);
+					} finally {
+						//pool threads are reused, so don't leave anything the user directory set up on the thread
+						threadLocalManager.clear();
+					}
+				}
+			}));
+		}
+
+		List<GbUser> rval = new ArrayList<>(userUuids.size());
+		try {
+			rval.addAll(lookupBatch(batches.get(0)));
+			for(Future<List<GbUser>> future: futures) {
+				rval.addAll(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GbException("Interrupted getting the list of users.", e);
+		} catch (ExecutionException e) {
+			throw new GbException("An error occurred getting the list of users.", e.getCause());
+		} finally {
+			for(Future<List<GbUser>> future: futures) {
+				future.cancel(true);
+			}
+		}
+		return rval;
+	}
+
+	/**
+	 * Look up users again in the background
+	 */
+	private void refresh(List<String> userUuids) {
+		List<String> queued = new ArrayList<>();
+		for(String userUuid: userUuids) {
+			if(this.refreshing.add(userUuid)) {
+				queued.add(userUuid);
+			}
+		}
+
+		for(final List<String> batch: partition(queued)) {
+			try {
+				this.refreshExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							lookupBatch(batch);
+						} catch (RuntimeException e) {
+							log.warn("Could not refresh the cached users", e);
+						} finally {
+							GradebookNgUserCache.this.refreshing.removeAll(batch);
+							threadLocalManager.clear();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				//the queue is full, these are still cached so will be refreshed on a later request
+				this.refreshing.removeAll(batch);
+			}
+		}
+	}
+
+	/**
+	 * Look up a batch of users in the user directory and cache them
+	 */
+	private List<GbUser> lookupBatch(List<String> userUuids) {
+		List<GbUser> rval = new ArrayList<>(userUuids.size());
+
+		long now = System.currentTimeMillis();
+		for(User u: this.userDirectoryService.getUsers(userUuids)) {
+			GbUser user = new GbUser(u);
+			this.cache.put(user.getUserUuid(), new CachedUser(user, now));
+			rval.add(user);
+		}
+		return rval;
+	}
+
+	private List<List<String>> partition(List<String> userUuids) {
+		List<List<String>> batches = new ArrayList<>();
+		for(int i = 0; i < userUuids.size(); i += this.batchSize) {
+			batches.add(new ArrayList<>(userUuids.subList(i, Math.min(i + this.batchSize, userUuids.size()))));
+		}
+		return batches;
+	}
+
+	/**
+	 * A user and when they were looked up
+	 */
+	private static class CachedUser implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final GbUser user;
+		private final long loaded;
+
+		CachedUser(GbUser user, long loaded) {
+			this.user = user;
+			this.loaded = loaded;
+		}
+	}
+}
@@ -2,14 +2,12 @@ package org.sakaiproject.gradebookng.business.helpers;
 
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
 import org.sakaiproject.gradebookng.business.model.ImportColumn;
 
-import java.text.MessageFormat;
-import java.text.ParseException;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Created by chmaurer on 1/21/15.
@@ -34,33 +32,65 @@ public class BaseImportHelper {
         return mapping;
     }
 
-    private static ImportColumn parseHeaderForImportColumn(String headerValue) {
+    /**
+     * Matches ASSIGNMENT_HEADER_PATTERN, ie "{0} [{1}]". The title is greedy so that a title containing brackets
+     * keeps them, and the points are whatever is in the final set of brackets.
+     */
+    private static final Pattern ASSIGNMENT_HEADER = Pattern.compile("^(.+) \\[([^\\[\\]]*)\\]$");
+
+    /**
+     * The points of an item header, a plain non negative number
+     */
+    private static final Pattern POINTS = Pattern.compile("^(\\d+(\\.\\d*)?|\\.\\d+)$");
+
+    /**
+     * Matches ASSIGNMENT_HEADER_COMMENT_PATTERN, the comments column for an item
+     */
+    private static final Pattern ASSIGNMENT_COMMENT_HEADER = Pattern.compile("^\\*/ (.+) Comments \\*/$");
+
+    /**
+     * Classify a header cell as an item with points, an item comments column or a regular column.
+     *
+     * The patterns are compiled once and each header is checked with a cheap suffix test before any matching is done,
+     * so files with hundreds of columns are classified without any per-cell formatter or exception overhead.
+     *
+     * Item headers have their points parsed here. If the points are not a number the column is TYPE_ITEM_WITH_INVALID_POINTS,
+     * so the file can be rejected before any item is created from it.
+     *
+     * @param headerValue the trimmed header, may be null for a blank header cell
+     * @return the ImportColumn for the header. Blank headers are regular columns with a null title.
+     */
+    protected static ImportColumn parseHeaderForImportColumn(String headerValue) {
         ImportColumn importColumn = new ImportColumn();
-        MessageFormat mf = new MessageFormat(ImportGradesHelper.ASSIGNMENT_HEADER_PATTERN);
-        Object[] parsedObject;
-        try {
-            parsedObject = mf.parse(headerValue);
-            importColumn.setColumnTitle((String)parsedObject[0]);
-            importColumn.setType(ImportColumn.TYPE_ITEM_WITH_POINTS);
-            importColumn.setPoints((String)parsedObject[1]);
-        } catch (ParseException e) {
-            mf = new MessageFormat(ImportGradesHelper.ASSIGNMENT_HEADER_COMMENT_PATTERN);
-            try {
-                parsedObject = mf.parse(headerValue);
-                importColumn.setColumnTitle((String)parsedObject[0]);
-                importColumn.setType(ImportColumn.TYPE_ITEM_WITH_COMMENTS);
-            } catch (ParseException e1) {
-                mf = new MessageFormat(ImportGradesHelper.HEADER_STANDARD_PATTERN);
-                try {
-                    parsedObject = mf.parse(headerValue);
-                    importColumn.setColumnTitle((String)parsedObject[0]);
-                    importColumn.setType(ImportColumn.TYPE_REGULAR);
-                } catch (ParseException e2) {
-                    throw new RuntimeException("Error parsing grade import", e2);
+
+        if(headerValue == null) {
+            return importColumn;
+        }
+
+        if(headerValue.endsWith("]")) {
+            Matcher m = ASSIGNMENT_HEADER.matcher(headerValue);
+            if(m.matches()) {
+                importColumn.setColumnTitle(m.group(1));
+                String points = m.group(2).trim();
+                if(POINTS.matcher(points).matches()) {
+                    importColumn.setType(ImportColumn.TYPE_ITEM_WITH_POINTS);
+                    importColumn.setPoints(Double.valueOf(points));
+                } else {
+                    importColumn.setType(ImportColumn.TYPE_ITEM_WITH_INVALID_POINTS);
                 }
+                return importColumn;
+            }
+        } else if(headerValue.endsWith("*/")) {
+            Matcher m = ASSIGNMENT_COMMENT_HEADER.matcher(headerValue);
+            if(m.matches()) {
+                importColumn.setColumnTitle(m.group(1));
+                importColumn.setType(ImportColumn.TYPE_ITEM_WITH_COMMENTS);
+                return importColumn;
             }
         }
 
+        importColumn.setColumnTitle(headerValue);
+        importColumn.setType(ImportColumn.TYPE_REGULAR);
         return importColumn;
     }
 
@@ -84,27 +114,6 @@ public class BaseImportHelper {
 	}
 	*/
 
-    /**
-     * Helper to map an Excel Row to a string[] so we can use the same methods to process it as the CSV
-     * @param row
-     * @return
-     */
-    protected static String[] convertRow(Row row) {
-
-        int numCells = row.getPhysicalNumberOfCells();
-        String[] s = new String[numCells];
-
-        int i = 0;
-        for(Cell cell: row) {
-            //force cell to String
-            cell.setCellType(Cell.CELL_TYPE_STRING);
-            s[i] = trim(cell.getStringCellValue());
-            i++;
-        }
-
-        return s;
-    }
-
     /**
      * Helper to trim a string to null
      * @param s
@@ -0,0 +1,164 @@
+package org.sakaiproject.gradebookng.business.helpers;
+
+import au.com.bytecode.opencsv.CSVWriter;
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
+import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes the gradebook export. The layout is the one {@link ImportGradesHelper} reads, so an export can be edited and imported again.
+ */
+public class ExportGradesHelper {
+
+    public static final Charset CSV_CHARSET = Charset.forName("UTF-8");
+
+    //number of rows the XLSX writer keeps in memory, older rows are flushed to a temporary file
+    private static final int XLSX_ROW_WINDOW = 100;
+
+    /**
+     * Build the header row: the student columns, then a points and a comments column for each assignment
+     * @param assignments the assignments to include
+     * @return
+     */
+    public static String[] buildHeader(List<Assignment> assignments) {
+        List<String> header = new ArrayList<String>();
+        header.add(ImportGradesHelper.IMPORT_USER_ID);
+        header.add(ImportGradesHelper.IMPORT_USER_NAME);
+
+        for (Assignment assignment : assignments) {
+            String assignmentPoints = assignment.getPoints().toString();
+            header.add(assignment.getName() + " [" + StringUtils.removeEnd(assignmentPoints, ".0") + "]");
+            header.add("*/ " + assignment.getName() + " Comments */");
+        }
+        return header.toArray(new String[header.size()]);
+    }
+
+    /**
+     * Build the row for a student
+     * @param studentGradeInfo the student and their grades
+     * @param assignments the assignments to include, in the same order as the header
+     * @param includeGrades whether to include the grades, or just the student columns
+     * @return
+     */
+    public static String[] buildRow(GbStudentGradeInfo studentGradeInfo, List<Assignment> assignments, boolean includeGrades) {
+        List<String> line = new ArrayList<String>();
+        line.add(studentGradeInfo.getStudentEid());
+        line.add(studentGradeInfo.getStudentLastName() + ", " + studentGradeInfo.getStudentFirstName());
+        if (includeGrades) {
+            for (Assignment assignment : assignments) {
+                GbGradeInfo gradeInfo = studentGradeInfo.getGrades().get(assignment.getId());
+                if (gradeInfo != null) {
+                    line.add(StringUtils.removeEnd(gradeInfo.getGrade(), ".0"));
+                    line.add(gradeInfo.getGradeComment());
+                } else {
+                    // Need to account for no grades
+                    line.add(null);
+                    line.add(null);
+                }
+            }
+        }
+        return line.toArray(new String[line.size()]);
+    }
+
+    /**
+     * Write the export as UTF-8 CSV. Each row is written as it is read from the iterator so the whole matrix is never held.
+     * The stream is flushed but not closed.
+     *
+     * @param out the stream to write to
+     * @param assignments the assignments to include
+     * @param students the students and their grades
+     * @param includeGrades whether to include the grades, or just the student columns
+     * @throws IOException
+     */
+    public static void writeCsv(OutputStream out, List<Assignment> assignments, Iterator<GbStudentGradeInfo> students, boolean includeGrades) throws IOException {
+        Writer writer = new OutputStreamWriter(out, CSV_CHARSET);
+        CSVWriter csvWriter = new CSVWriter(writer);
+
+        csvWriter.writeNext(buildHeader(assignments));
+        while (students.hasNext()) {
+            csvWriter.writeNext(buildRow(students.next(), assignments, includeGrades));
+        }
+
+        csvWriter.flush();
+        if (csvWriter.checkError()) {
+            throw new IOException("Error writing CSV export");
+        }
+    }
+
+    /**
+     * Write the export as XLSX, with the same layout as the CSV. Rows are written through a streaming workbook that
+     * only keeps a small window of rows in memory. Numeric grades are written as numbers, everything else as text.
+     * The stream is not closed.
+     *
+     * @param out the stream to write to
+     * @param assignments the assignments to include
+     * @param students the students and their grades
+     * @param includeGrades whether to include the grades, or just the student columns
+     * @throws IOException
+     */
+    public static void writeXlsx(OutputStream out, List<Assignment> assignments, Iterator<GbStudentGradeInfo> students, boolean includeGrades) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(XLSX_ROW_WINDOW);
+        try {
+            Sheet sheet = workbook.createSheet("Gradebook");
+
+            int rowNum = 0;
+            writeXlsxRow(sheet.createRow(rowNum++), buildHeader(assignments), false);
+            while (students.hasNext()) {
+                writeXlsxRow(sheet.createRow(rowNum++), buildRow(students.next(), assignments, includeGrades), true);
+            }
+
+            workbook.write(out);
+        } finally {
+            //remove the temporary files backing the flushed rows
+            workbook.dispose();
+        }
+    }
+
+    private static void writeXlsxRow(Row row, String[] values, boolean numericGrades) {
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i];
+            if (value == null) {
+                continue;
+            }
+            Cell cell = row.createCell(i);
+            Double number = (numericGrades && isGradeColumn(i)) ? toNumber(value) : null;
+            if (number != null) {
+                cell.setCellValue(number);
+            } else {
+                cell.setCellValue(value);
+            }
+        }
+    }
+
+    /**
+     * The assignment columns alternate points then comments, after the two student columns
+     */
+    private static boolean isGradeColumn(int column) {
+        return column >= 2 && (column - 2) % 2 == 0;
+    }
+
+    /**
+     * Parse a grade as a number, or null if it isn't one (ie a letter grade)
+     */
+    private static Double toNumber(String value) {
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
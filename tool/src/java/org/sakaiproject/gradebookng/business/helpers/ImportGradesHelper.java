@@ -4,10 +4,6 @@ package org.sakaiproject.gradebookng.business.helpers;
 import au.com.bytecode.opencsv.CSVReader;
 import lombok.extern.apachecommons.CommonsLog;
 import org.apache.commons.lang.StringUtils;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.sakaiproject.entity.api.ResourceProperties;
 import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
@@ -18,15 +14,14 @@ import org.sakaiproject.gradebookng.business.model.ImportedGradeWrapper;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItem;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItemDetail;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItemStatus;
-import org.sakaiproject.gradebookng.tool.model.AssignmentStudentGradeInfo;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 import org.sakaiproject.util.BaseResourcePropertiesEdit;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.text.MessageFormat;
-import java.text.ParseException;
+import java.io.PushbackReader;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -38,8 +33,8 @@ import java.util.Map;
 @CommonsLog
 public class ImportGradesHelper extends BaseImportHelper {
 
-    private static final String IMPORT_USER_ID="Student ID";
-    private static final String IMPORT_USER_NAME="Student Name";
+    protected static final String IMPORT_USER_ID="Student ID";
+    protected static final String IMPORT_USER_NAME="Student Name";
 
     protected static final String ASSIGNMENT_HEADER_PATTERN = "{0} [{1}]";
     protected static final String ASSIGNMENT_HEADER_COMMENT_PATTERN = "*/ {0} Comments */";
@@ -48,29 +43,25 @@ public class ImportGradesHelper extends BaseImportHelper {
 
     /**
      * Parse a CSV into a list of ImportedGrade objects. Returns list if ok, or null if error
+     *
+     * The file is read in the same charset the export is written in, {@link ExportGradesHelper#CSV_CHARSET}, and a
+     * leading byte order mark (as added by some spreadsheet applications) is skipped.
+     *
      * @param is InputStream of the data to parse
      * @return
      */
     public static ImportedGradeWrapper parseCsv(InputStream is, Map<String, String> userMap) {
 
         //manually parse method so we can support arbitrary columns
-        CSVReader reader = new CSVReader(new InputStreamReader(is));
+        PushbackReader in = new PushbackReader(new InputStreamReader(is, ExportGradesHelper.CSV_CHARSET));
+        CSVReader reader = new CSVReader(in);
         String [] nextLine;
-        int lineCount = 0;
-        List<ImportedGrade> list = new ArrayList<ImportedGrade>();
-        Map<Integer,ImportColumn> mapping = null;
+        ImportedGradeRowHandler handler = new ImportedGradeRowHandler(userMap);
 
         try {
+            skipByteOrderMark(in);
             while ((nextLine = reader.readNext()) != null) {
-
-                if(lineCount == 0) {
-                    //header row, capture it
-                    mapping = mapHeaderRow(nextLine);
-                } else {
-                    //map the fields into the object
-                    list.add(mapLine(nextLine, mapping, userMap));
-                }
-                lineCount++;
+                handler.handleRow(nextLine);
             }
         } catch (Exception e) {
             log.error("Error reading imported file: " + e.getClass() + " : " + e.getMessage());
@@ -83,107 +74,73 @@ public class ImportGradesHelper extends BaseImportHelper {
             }
         }
 
-        ImportedGradeWrapper importedGradeWrapper = new ImportedGradeWrapper();
-        importedGradeWrapper.setColumns(mapping.values());
-        importedGradeWrapper.setImportedGrades(list);
+        return handler.getImportedGradeWrapper();
+    }
 
-        return importedGradeWrapper;
+    /**
+     * Skip the byte order mark if the reader starts with one
+     */
+    private static void skipByteOrderMark(PushbackReader in) throws IOException {
+        int c = in.read();
+        if (c != -1 && c != '\uFEFF') {
+            in.unread(c);
+        }
     }
 
     /**
-     * Parse an XLS into a list of ImportedGrade objects
+     * Parse an XLS or XLSX into a list of ImportedGrade objects
      * Note that only the first sheet of the Excel file is supported.
      *
+     * The sheet is streamed a row at a time rather than loaded as a whole workbook, see {@link SpreadsheetRowReader}
+     *
      * @param is InputStream of the data to parse
      * @return
      */
     public static ImportedGradeWrapper parseXls(InputStream is, Map<String, String> userMap) {
 
-        int lineCount = 0;
-        List<ImportedGrade> list = new ArrayList<ImportedGrade>();
-        Map<Integer,ImportColumn> mapping = null;
+        ImportedGradeRowHandler handler = new ImportedGradeRowHandler(userMap);
 
         try {
-            Workbook wb = WorkbookFactory.create(is);
-            Sheet sheet = wb.getSheetAt(0);
-            for (Row row : sheet) {
-
-                String[] r = convertRow(row);
-
-                if(lineCount == 0) {
-                    //header row, capture it
-                    mapping = mapHeaderRow(r);
-                } else {
-                    //map the fields into the object
-                    list.add(mapLine(r, mapping, userMap));
-                }
-                lineCount++;
-            }
-
+            SpreadsheetRowReader.readFirstSheet(is, handler);
         } catch (Exception e) {
             log.error("Error reading imported file: " + e.getClass() + " : " + e.getMessage());
             return null;
         }
 
-        ImportedGradeWrapper importedGradeWrapper = new ImportedGradeWrapper();
-        importedGradeWrapper.setColumns(mapping.values());
-        importedGradeWrapper.setImportedGrades(list);
-        return importedGradeWrapper;
+        return handler.getImportedGradeWrapper();
     }
 
-//    private static List<ProcessedGradeItem> processAssignmentNames(Map<Integer,String> mapping) {
-//        List<String> assignmentNames = new ArrayList<String>();
-//        for(Map.Entry<Integer,String> entry: mapping.entrySet()) {
-//            int i = entry.getKey();
-//            //trim in case some whitespace crept in
-//            String col = trim(entry.getValue());
-//
-//            //Find all columns that are not well known
-//            if(!StringUtils.equals(col, IMPORT_USER_ID) && !StringUtils.equals(col, IMPORT_USER_NAME)) {
-//
-//                String assignmentName = parseHeaderForAssignmentName(col);
-//                if (!assignmentNames.contains(assignmentName))
-//                    assignmentNames.add(assignmentName);
-//            }
-//        }
-//        return assignmentNames;
-//    }
-
-    private static Object[] parseHeaderForAssignmentName(String headerValue) {
-        MessageFormat mf = new MessageFormat(ImportGradesHelper.ASSIGNMENT_HEADER_PATTERN);
-        Object[] parsedObject;
-        try {
-            parsedObject = mf.parse(headerValue);
-        } catch (ParseException e) {
-            mf = new MessageFormat(ImportGradesHelper.ASSIGNMENT_HEADER_COMMENT_PATTERN);
-            try {
-                parsedObject = mf.parse(headerValue);
-            } catch (ParseException e1) {
-                throw new RuntimeException("Error parsing grade import");
-            }
-        }
+    /**
+     * Row handler shared by the CSV and Excel parsers. The first row is the header and determines the column mapping,
+     * every other row is mapped into an ImportedGrade.
+     */
+    private static class ImportedGradeRowHandler implements ImportRowHandler {
 
-        return parsedObject;
-    }
+        private final Map<String, String> userMap;
+        private final List<ImportedGrade> list = new ArrayList<ImportedGrade>();
+        private Map<Integer,ImportColumn> mapping = null;
 
-    private static boolean isCommentsColumn(String headerValue) {
-        MessageFormat mf = new MessageFormat(ImportGradesHelper.ASSIGNMENT_HEADER_COMMENT_PATTERN);
-        try {
-            mf.parse(headerValue);
-        } catch (ParseException e) {
-            return false;
+        ImportedGradeRowHandler(Map<String, String> userMap) {
+            this.userMap = userMap;
         }
-        return true;
-    }
 
-    private static boolean isGradeColumn(String headerValue) {
-        MessageFormat mf = new MessageFormat(ImportGradesHelper.ASSIGNMENT_HEADER_PATTERN);
-        try {
-            mf.parse(headerValue);
-        } catch (ParseException e) {
-            return false;
+        @Override
+        public void handleRow(String[] row) {
+            if(mapping == null) {
+                //header row, capture it
+                mapping = mapHeaderRow(row);
+            } else {
+                //map the fields into the object
+                list.add(mapLine(row, mapping, userMap));
+            }
+        }
+
+        ImportedGradeWrapper getImportedGradeWrapper() {
+            ImportedGradeWrapper importedGradeWrapper = new ImportedGradeWrapper();
+            importedGradeWrapper.setColumns(mapping != null ? mapping.values() : new ArrayList<ImportColumn>());
+            importedGradeWrapper.setImportedGrades(list);
+            return importedGradeWrapper;
         }
-        return true;
     }
 
     /**
@@ -236,8 +193,8 @@ public class ImportGradesHelper extends BaseImportHelper {
                 importedGradeItem.setGradeItemComment(lineVal);
             } else {
 
-                //only add if not blank
-                if(StringUtils.isNotBlank(lineVal)) {
+                //only add if not blank, and skip any columns that had a blank header
+                if(StringUtils.isNotBlank(lineVal) && importColumn.getColumnTitle() != null) {
                     p.addProperty(importColumn.getColumnTitle(), lineVal);
                 }
             }
@@ -248,68 +205,92 @@ public class ImportGradesHelper extends BaseImportHelper {
     }
 
 
+    /**
+     * Diff the imported grades against the current grades in a single pass over the file.
+     *
+     * The current grades are indexed by assignment and student eid once, so each imported cell is a constant time
+     * lookup. Each cell is tagged with a {@link ProcessedGradeItemDetail.ChangeType} and the item statuses are
+     * derived from the cells as they are processed.
+     *
+     * @param importedGradeWrapper the parsed file
+     * @param assignments the assignments currently in the gradebook
+     * @param currentGrades the current grade matrix
+     * @return a {@link ProcessedGradeItem} for each assignment in the file, in column order
+     */
     public static List<ProcessedGradeItem> processImportedGrades(ImportedGradeWrapper importedGradeWrapper,
                                                                  List<Assignment> assignments, List<GbStudentGradeInfo> currentGrades) {
         List<ProcessedGradeItem> processedGradeItems = new ArrayList<ProcessedGradeItem>();
         Map<String, Assignment> assignmentNameMap = new HashMap<String, Assignment>();
-        Map<String, ProcessedGradeItem> assignmentProcessedGradeItemMap = new HashMap<String, ProcessedGradeItem>();
+        Map<String, ColumnDiff> columnDiffMap = new HashMap<String, ColumnDiff>();
 
-        Map<Long, AssignmentStudentGradeInfo> transformedGradeMap = transformCurrentGrades(currentGrades);
+        Map<Long, Map<String, GbGradeInfo>> currentGradeIndex = indexCurrentGrades(currentGrades);
 
         //Map the assignment name back to the Id
         for (Assignment assignment : assignments) {
             assignmentNameMap.put(assignment.getName(), assignment);
         }
 
-
+        //set up an item for each assignment in the file. The points and comments columns share the item.
         for (ImportColumn column : importedGradeWrapper.getColumns()) {
-            boolean needsAdded = false;
             String assignmentName = column.getColumnTitle();
 
-            ProcessedGradeItem processedGradeItem = assignmentProcessedGradeItemMap.get(assignmentName);
-            if (processedGradeItem == null) {
-                processedGradeItem = new ProcessedGradeItem();
-                needsAdded = true;
+            if (column.getType() != ImportColumn.TYPE_ITEM_WITH_POINTS && column.getType() != ImportColumn.TYPE_ITEM_WITH_COMMENTS) {
+                //Just get out
+                log.warn("Bad column type - " + column.getType() + ".  Skipping.");
+                continue;
             }
 
-            Assignment assignment = assignmentNameMap.get(assignmentName);
-            ProcessedGradeItemStatus status = determineStatus(column, assignment, importedGradeWrapper, transformedGradeMap);
+            ColumnDiff columnDiff = columnDiffMap.get(assignmentName);
+            if (columnDiff == null) {
+                Assignment assignment = assignmentNameMap.get(assignmentName);
+                columnDiff = new ColumnDiff(assignment, assignment != null ? currentGradeIndex.get(assignment.getId()) : null);
+                if (assignment != null) {
+                    columnDiff.item.setItemId(assignment.getId());
+                }
+                columnDiffMap.put(assignmentName, columnDiff);
+                processedGradeItems.add(columnDiff.item);
+            }
 
             if (column.getType() == ImportColumn.TYPE_ITEM_WITH_POINTS) {
-                processedGradeItem.setItemTitle(assignmentName);
-                processedGradeItem.setItemPointValue(column.getPoints());
-                processedGradeItem.setStatus(status);
-            } else if (column.getType() == ImportColumn.TYPE_ITEM_WITH_COMMENTS) {
-                processedGradeItem.setCommentLabel(assignmentName + " Comments");
-                processedGradeItem.setCommentStatus(status);
+                columnDiff.item.setItemTitle(assignmentName);
+                columnDiff.item.setItemPointValue(BigDecimal.valueOf(column.getPoints()).stripTrailingZeros().toPlainString());
+                columnDiff.hasPoints = true;
             } else {
-                //Just get out
-                log.warn("Bad column type - " + column.getType() + ".  Skipping.");
-                continue;
+                columnDiff.item.setCommentLabel(assignmentName + " Comments");
+                columnDiff.hasComments = true;
             }
+        }
 
-            if (assignment != null) {
-                processedGradeItem.setItemId(assignment.getId());
-            }
+        //diff every imported cell against the index
+        for (ImportedGrade importedGrade : importedGradeWrapper.getImportedGrades()) {
+            for (ImportedGradeItem importedGradeItem : importedGrade.getGradeItemMap().values()) {
+                ColumnDiff columnDiff = columnDiffMap.get(importedGradeItem.getGradeItemName());
+                if (columnDiff == null) {
+                    continue;
+                }
 
-            List<ProcessedGradeItemDetail> processedGradeItemDetails = new ArrayList<>();
-            for (ImportedGrade importedGrade : importedGradeWrapper.getImportedGrades()) {
-                ImportedGradeItem importedGradeItem = importedGrade.getGradeItemMap().get(assignmentName);
-                if (importedGradeItem != null) {
-                    ProcessedGradeItemDetail processedGradeItemDetail = new ProcessedGradeItemDetail();
-                    processedGradeItemDetail.setStudentEid(importedGrade.getStudentEid());
-                    processedGradeItemDetail.setStudentUuid(importedGrade.getStudentUuid());
-                    processedGradeItemDetail.setGrade(importedGradeItem.getGradeItemScore());
-                    processedGradeItemDetail.setComment(importedGradeItem.getGradeItemComment());
-                    processedGradeItemDetails.add(processedGradeItemDetail);
+                GbGradeInfo actualGradeInfo = null;
+                if (columnDiff.currentGrades != null) {
+                    actualGradeInfo = columnDiff.currentGrades.get(importedGrade.getStudentEid());
                 }
 
+                ProcessedGradeItemDetail processedGradeItemDetail = new ProcessedGradeItemDetail();
+                processedGradeItemDetail.setStudentEid(importedGrade.getStudentEid());
+                processedGradeItemDetail.setStudentUuid(importedGrade.getStudentUuid());
+                processedGradeItemDetail.setGrade(importedGradeItem.getGradeItemScore());
+                processedGradeItemDetail.setComment(importedGradeItem.getGradeItemComment());
+                columnDiff.diff(processedGradeItemDetail, actualGradeInfo);
+
+                columnDiff.item.getProcessedGradeItemDetails().add(processedGradeItemDetail);
             }
-            processedGradeItem.setProcessedGradeItemDetails(processedGradeItemDetails);
+        }
 
-            if (needsAdded) {
-                processedGradeItems.add(processedGradeItem);
-                assignmentProcessedGradeItemMap.put(assignmentName, processedGradeItem);
+        for (ColumnDiff columnDiff : columnDiffMap.values()) {
+            if (columnDiff.hasPoints) {
+                columnDiff.item.setStatus(determineStatus(columnDiff.assignment, columnDiff.gradesChanged));
+            }
+            if (columnDiff.hasComments) {
+                columnDiff.item.setCommentStatus(determineStatus(columnDiff.assignment, columnDiff.commentsChanged));
             }
         }
 
@@ -317,80 +298,101 @@ public class ImportGradesHelper extends BaseImportHelper {
 
     }
 
-    private static ProcessedGradeItemStatus determineStatus(ImportColumn column, Assignment assignment, ImportedGradeWrapper importedGradeWrapper,
-                                       Map<Long, AssignmentStudentGradeInfo> transformedGradeMap) {
-        ProcessedGradeItemStatus status = new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_UNKNOWN);
+    private static ProcessedGradeItemStatus determineStatus(Assignment assignment, boolean changed) {
         if (assignment == null) {
-            status = new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_NEW);
+            return new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_NEW);
         } else if (assignment.getExternalId() != null) {
-            status = new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_EXTERNAL, assignment.getExternalAppName());
-        } else {
-            for (ImportedGrade importedGrade : importedGradeWrapper.getImportedGrades()) {
-                AssignmentStudentGradeInfo assignmentStudentGradeInfo = transformedGradeMap.get(assignment.getId());
-                ImportedGradeItem importedGradeItem = importedGrade.getGradeItemMap().get(column.getColumnTitle());
-
-                String actualScore = null;
-                String actualComment = null;
-
-                if (assignmentStudentGradeInfo != null) {
-                    GbGradeInfo actualGradeInfo = assignmentStudentGradeInfo.getStudentGrades().get(importedGrade.getStudentEid());
-
-                    if (actualGradeInfo != null) {
-                        actualScore = actualGradeInfo.getGrade();
-                        actualComment = actualGradeInfo.getGradeComment();
-                    }
-                }
-                String importedScore = null;
-                String importedComment = null;
+            return new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_EXTERNAL, assignment.getExternalAppName());
+        } else if (changed) {
+            return new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_UPDATE);
+        }
+        // must not have been any changes
+        return new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_NA);
+    }
 
-                if (importedGradeItem != null) {
-                    importedScore = importedGradeItem.getGradeItemScore();
-                    importedComment = importedGradeItem.getGradeItemComment();
-                }
+    /**
+     * Index the current grades by assignment id and then student eid.
+     * A student may appear in more than one {@link GbStudentGradeInfo} so the grades are merged.
+     */
+    private static Map<Long, Map<String, GbGradeInfo>> indexCurrentGrades(List<GbStudentGradeInfo> currentGrades) {
+        Map<Long, Map<String, GbGradeInfo>> index = new HashMap<Long, Map<String, GbGradeInfo>>();
 
-                if (column.getType() == ImportColumn.TYPE_ITEM_WITH_POINTS) {
-                    String trimmedImportedScore = StringUtils.removeEnd(importedScore, ".0");
-                    String trimmedActualScore = StringUtils.removeEnd(actualScore, ".0");
-                    if (trimmedImportedScore != null && !trimmedImportedScore.equals(trimmedActualScore)) {
-                        status = new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_UPDATE);
-                        break;
-                    }
-                } else if (column.getType() == ImportColumn.TYPE_ITEM_WITH_COMMENTS) {
-                    if (importedComment != null && !importedComment.equals(actualComment)) {
-                        status = new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_UPDATE);
-                        break;
-                    }
+        for (GbStudentGradeInfo studentGradeInfo : currentGrades) {
+            for (Map.Entry<Long, GbGradeInfo> entry : studentGradeInfo.getGrades().entrySet()) {
+                Map<String, GbGradeInfo> studentGrades = index.get(entry.getKey());
+                if (studentGrades == null) {
+                    studentGrades = new HashMap<String, GbGradeInfo>();
+                    index.put(entry.getKey(), studentGrades);
                 }
+                studentGrades.put(studentGradeInfo.getStudentEid(), entry.getValue());
             }
-            // If we get here, must not have been any changes
-            if (status.getStatusCode() == ProcessedGradeItemStatus.STATUS_UNKNOWN) {
-                status = new ProcessedGradeItemStatus(ProcessedGradeItemStatus.STATUS_NA);
-            }
+        }
 
-            //TODO - What about if a user was added to the import file?
-            // That probably means that actualGradeInfo from up above is null...but what do I do?
+        return index;
+    }
+
+    /**
+     * Running diff state for one assignment in the file
+     */
+    private static class ColumnDiff {
+
+        final ProcessedGradeItem item = new ProcessedGradeItem();
+        final Assignment assignment;
+        final Map<String, GbGradeInfo> currentGrades;
 
+        boolean hasPoints;
+        boolean hasComments;
+        boolean gradesChanged;
+        boolean commentsChanged;
+
+        ColumnDiff(Assignment assignment, Map<String, GbGradeInfo> currentGrades) {
+            this.assignment = assignment;
+            this.currentGrades = currentGrades;
         }
-        return status;
-    }
 
-    private static Map<Long, AssignmentStudentGradeInfo> transformCurrentGrades(List<GbStudentGradeInfo> currentGrades) {
-        Map<Long, AssignmentStudentGradeInfo> assignmentMap = new HashMap<Long, AssignmentStudentGradeInfo>();
+        /**
+         * Work out the change for a single cell and record it against the column.
+         *
+         * The detail is left holding the values to write for the cell, so a grade change keeps the current comment
+         * when the file has none for it, and a comment change keeps the current grade.
+         */
+        void diff(ProcessedGradeItemDetail processedGradeItemDetail, GbGradeInfo actualGradeInfo) {
+            String actualScore = null;
+            String actualComment = null;
+            if (actualGradeInfo != null) {
+                actualScore = actualGradeInfo.getGrade();
+                actualComment = actualGradeInfo.getGradeComment();
+            }
 
-        for (GbStudentGradeInfo studentGradeInfo : currentGrades) {
-            for (Map.Entry<Long, GbGradeInfo> entry : studentGradeInfo.getGrades().entrySet()) {
-                Long assignmentId = entry.getKey();
-                AssignmentStudentGradeInfo assignmentStudentGradeInfo = assignmentMap.get(assignmentId);
-                if (assignmentStudentGradeInfo == null) {
-                    assignmentStudentGradeInfo = new AssignmentStudentGradeInfo();
-                    assignmentStudentGradeInfo.setAssignmemtId(assignmentId);
-                    assignmentMap.put(assignmentId, assignmentStudentGradeInfo);
-                }
-                assignmentStudentGradeInfo.addGrade(studentGradeInfo.getStudentEid(), entry.getValue());
+            //the same normalisation saveGrade applies
+            String importedScore = StringUtils.trimToNull(StringUtils.removeEnd(processedGradeItemDetail.getGrade(), ".0"));
+            actualScore = StringUtils.trimToNull(StringUtils.removeEnd(actualScore, ".0"));
+            String importedComment = processedGradeItemDetail.getComment();
+
+            //a student that isn't in the site has no uuid to write against, so nothing for them counts as a change
+            if (processedGradeItemDetail.getStudentUuid() == null) {
+                processedGradeItemDetail.setChangeType((importedScore != null || importedComment != null)
+                        ? ProcessedGradeItemDetail.ChangeType.UNKNOWN_STUDENT : ProcessedGradeItemDetail.ChangeType.UNCHANGED);
+                return;
             }
 
-        }
+            boolean gradeChanged = importedScore != null && !importedScore.equals(actualScore);
+            boolean commentChanged = importedComment != null && !importedComment.equals(actualComment);
+
+            gradesChanged |= gradeChanged;
+            commentsChanged |= commentChanged;
 
-        return assignmentMap;
+            if (gradeChanged) {
+                processedGradeItemDetail.setChangeType(actualScore == null ? ProcessedGradeItemDetail.ChangeType.NEW : ProcessedGradeItemDetail.ChangeType.UPDATE);
+                if (importedComment == null) {
+                    processedGradeItemDetail.setComment(actualComment);
+                }
+            } else if (commentChanged) {
+                processedGradeItemDetail.setChangeType(ProcessedGradeItemDetail.ChangeType.COMMENT_ONLY);
+                processedGradeItemDetail.setGrade(actualScore);
+            } else {
+                processedGradeItemDetail.setChangeType(ProcessedGradeItemDetail.ChangeType.UNCHANGED);
+            }
+        }
     }
 }
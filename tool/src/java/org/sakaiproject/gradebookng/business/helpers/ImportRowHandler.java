@@ -0,0 +1,15 @@
+package org.sakaiproject.gradebookng.business.helpers;
+
+/**
+ * Callback for the rows of an import file. Each reader (CSV, XLS, XLSX) pushes the rows it reads into one of these,
+ * in file order, so the same mapping code can be used regardless of the file format.
+ */
+public interface ImportRowHandler {
+
+    /**
+     * Handle a single row of the file. The first row is the header row.
+     *
+     * @param row the cell values for the row, indexed by column. Missing cells are null.
+     */
+    void handleRow(String[] row);
+}
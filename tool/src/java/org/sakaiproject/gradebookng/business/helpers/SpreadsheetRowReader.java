@@ -0,0 +1,261 @@
+package org.sakaiproject.gradebookng.business.helpers;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.poi.POIXMLDocument;
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.MissingRecordAwareHSSFListener;
+import org.apache.poi.hssf.eventusermodel.dummyrecord.LastCellOfRowDummyRecord;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler.SheetContentsHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Streams the rows of the first sheet of an Excel file (XLS or XLSX) into an {@link ImportRowHandler}.
+ *
+ * This uses the POI event APIs rather than building the workbook with WorkbookFactory, so only the current row
+ * is held in memory, rather than every cell object in the workbook.
+ *
+ * Cell values are converted to strings the same way a cell forced to a string type would be, ie 7.0 becomes "7".
+ */
+public class SpreadsheetRowReader {
+
+    /**
+     * Read the first sheet of an XLS or XLSX file, determining the format from the file header
+     *
+     * @param is InputStream of the file to read
+     * @param handler the handler that will receive each row
+     * @throws IOException if the stream cannot be read or is neither format
+     */
+    public static void readFirstSheet(InputStream is, ImportRowHandler handler) throws IOException {
+
+        //the header checks need to be able to unread the bytes they peek at
+        if (!is.markSupported()) {
+            is = new PushbackInputStream(is, 8);
+        }
+
+        if (POIFSFileSystem.hasPOIFSHeader(is)) {
+            readXls(is, handler);
+        } else if (POIXMLDocument.hasOOXMLHeader(is)) {
+            readXlsx(is, handler);
+        } else {
+            throw new IOException("File is neither an XLS nor an XLSX file");
+        }
+    }
+
+    /**
+     * Read the first sheet of an XLS (HSSF) file
+     *
+     * @param is InputStream of the file to read
+     * @param handler the handler that will receive each row
+     * @throws IOException
+     */
+    public static void readXls(InputStream is, ImportRowHandler handler) throws IOException {
+        POIFSFileSystem fs = new POIFSFileSystem(is);
+
+        HSSFRequest request = new HSSFRequest();
+        XlsListener xlsListener = new XlsListener(handler);
+        FormatTrackingHSSFListener formatListener = new FormatTrackingHSSFListener(new MissingRecordAwareHSSFListener(xlsListener));
+        request.addListenerForAllRecords(formatListener);
+
+        new HSSFEventFactory().processWorkbookEvents(request, fs);
+    }
+
+    /**
+     * Read the first sheet of an XLSX (XSSF) file
+     *
+     * @param is InputStream of the file to read
+     * @param handler the handler that will receive each row
+     * @throws IOException
+     */
+    public static void readXlsx(InputStream is, ImportRowHandler handler) throws IOException {
+        OPCPackage pkg = null;
+        try {
+            pkg = OPCPackage.open(is);
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            InputStream sheet = sheets.next();
+            try {
+                XMLReader parser = XMLReaderFactory.createXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(reader.getStylesTable(), strings, new XlsxContentsHandler(handler), false));
+                parser.parse(new InputSource(sheet));
+            } finally {
+                sheet.close();
+            }
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("Error reading XLSX file", e);
+        } finally {
+            if (pkg != null) {
+                //we only read, so discard rather than close, which would try and save the package
+                pkg.revert();
+            }
+        }
+    }
+
+    /**
+     * Accumulates the cells of the current row by column index, so that blank cells keep their position
+     */
+    private static class RowBuffer {
+
+        private final List<String> cells = new ArrayList<String>();
+
+        void set(int column, String value) {
+            while (cells.size() <= column) {
+                cells.add(null);
+            }
+            cells.set(column, StringUtils.trimToNull(value));
+        }
+
+        String[] flush() {
+            String[] row = cells.toArray(new String[cells.size()]);
+            cells.clear();
+            return row;
+        }
+    }
+
+    /**
+     * SAX callback for the XSSF sheet handler
+     */
+    private static class XlsxContentsHandler implements SheetContentsHandler {
+
+        private final ImportRowHandler handler;
+        private final RowBuffer row = new RowBuffer();
+
+        XlsxContentsHandler(ImportRowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+        }
+
+        @Override
+        public void endRow() {
+            handler.handleRow(row.flush());
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue) {
+            row.set(new CellReference(cellReference).getCol(), formattedValue);
+        }
+
+        @Override
+        public void headerFooter(String text, boolean isHeader, String tagName) {
+        }
+    }
+
+    /**
+     * Record listener for the HSSF event model. Only the records of the first worksheet are handled.
+     */
+    private static class XlsListener implements HSSFListener {
+
+        private final ImportRowHandler handler;
+        private final RowBuffer row = new RowBuffer();
+
+        private SSTRecord sstRecord;
+        private int sheetIndex = -1;
+
+        //formulas with string results have the value in the following StringRecord
+        private int pendingStringColumn = -1;
+
+        XlsListener(ImportRowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void processRecord(Record record) {
+
+            switch (record.getSid()) {
+                case BOFRecord.sid:
+                    if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                        sheetIndex++;
+                    }
+                    return;
+                case SSTRecord.sid:
+                    //shared strings live in the workbook globals, before any sheet
+                    sstRecord = (SSTRecord) record;
+                    return;
+                default:
+                    break;
+            }
+
+            if (sheetIndex != 0) {
+                return;
+            }
+
+            switch (record.getSid()) {
+                case LabelSSTRecord.sid:
+                    LabelSSTRecord lsr = (LabelSSTRecord) record;
+                    row.set(lsr.getColumn(), sstRecord.getString(lsr.getSSTIndex()).toString());
+                    break;
+                case LabelRecord.sid:
+                    LabelRecord lr = (LabelRecord) record;
+                    row.set(lr.getColumn(), lr.getValue());
+                    break;
+                case NumberRecord.sid:
+                    NumberRecord nr = (NumberRecord) record;
+                    row.set(nr.getColumn(), NumberToTextConverter.toText(nr.getValue()));
+                    break;
+                case BoolErrRecord.sid:
+                    BoolErrRecord ber = (BoolErrRecord) record;
+                    if (ber.isBoolean()) {
+                        row.set(ber.getColumn(), ber.getBooleanValue() ? "TRUE" : "FALSE");
+                    }
+                    break;
+                case FormulaRecord.sid:
+                    FormulaRecord fr = (FormulaRecord) record;
+                    if (fr.hasCachedResultString()) {
+                        pendingStringColumn = fr.getColumn();
+                    } else {
+                        row.set(fr.getColumn(), NumberToTextConverter.toText(fr.getValue()));
+                    }
+                    break;
+                case StringRecord.sid:
+                    if (pendingStringColumn >= 0) {
+                        row.set(pendingStringColumn, ((StringRecord) record).getString());
+                        pendingStringColumn = -1;
+                    }
+                    break;
+                default:
+                    if (record instanceof LastCellOfRowDummyRecord) {
+                        handler.handleRow(row.flush());
+                    }
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import lombok.Getter;
+
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * Grade statistics for an assignment: count, mean, median, standard deviation, min, max and a histogram of the grades as a
+ * percentage of the points.
+ *
+ * The grades are held as a sorted array of doubles, with running totals, so that a single grade changing can be applied
+ * without going back over the whole column. Grades that are not numbers are ignored.
+ */
+public class GbAssignmentStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Number of histogram buckets, each covering an equal share of the points. Grades over the points go in the last bucket.
+	 */
+	public static final int BUCKETS = 10;
+
+	@Getter
+	private final double points;
+
+	/**
+	 * When these were worked out
+	 */
+	@Getter
+	private final long loaded;
+
+	private double[] grades;
+
+	@Getter
+	private int count;
+
+	private double sum;
+	private double sumOfSquares;
+	private final int[] histogram = new int[BUCKETS];
+
+	/**
+	 * @param points the points the assignment is out of
+	 * @param grades the grades for the assignment, one per student that has a grade
+	 */
+	public GbAssignmentStatistics(double points, double[] grades) {
+		this.points = points;
+		this.loaded = System.currentTimeMillis();
+		this.grades = Arrays.copyOf(grades, grades.length);
+		Arrays.sort(this.grades);
+		this.count = this.grades.length;
+
+		for(double grade: this.grades) {
+			this.sum += grade;
+			this.sumOfSquares += grade * grade;
+			this.histogram[bucket(grade)]++;
+		}
+	}
+
+	/**
+	 * Apply a change to one grade. Either may be null (or not a number) if there was or is no grade.
+	 *
+	 * @param oldGrade the grade before the change
+	 * @param newGrade the grade after the change
+	 */
+	public synchronized void update(String oldGrade, String newGrade) {
+		if(NumberUtils.isNumber(oldGrade)) {
+			remove(NumberUtils.toDouble(oldGrade));
+		}
+		if(NumberUtils.isNumber(newGrade)) {
+			add(NumberUtils.toDouble(newGrade));
+		}
+	}
+
+	public boolean isExpired(long ttl) {
+		return System.currentTimeMillis() - this.loaded > ttl;
+	}
+
+	public synchronized Double getMean() {
+		return (this.count > 0) ? this.sum / this.count : null;
+	}
+
+	public synchronized Double getMedian() {
+		if(this.count == 0) {
+			return null;
+		}
+		int middle = this.count / 2;
+		return (this.count % 2 == 1) ? this.grades[middle] : (this.grades[middle - 1] + this.grades[middle]) / 2;
+	}
+
+	/**
+	 * @return the population standard deviation
+	 */
+	public synchronized Double getStandardDeviation() {
+		if(this.count == 0) {
+			return null;
+		}
+		double mean = this.sum / this.count;
+		return Math.sqrt(Math.max(0, this.sumOfSquares / this.count - mean * mean));
+	}
+
+	public synchronized Double getMin() {
+		return (this.count > 0) ? this.grades[0] : null;
+	}
+
+	public synchronized Double getMax() {
+		return (this.count > 0) ? this.grades[this.count - 1] : null;
+	}
+
+	/**
+	 * @return the number of grades in each bucket, lowest first
+	 */
+	public synchronized int[] getHistogram() {
+		return Arrays.copyOf(this.histogram, BUCKETS);
+	}
+
+	private void add(double grade) {
+		int index = Arrays.binarySearch(this.grades, 0, this.count, grade);
+		if(index < 0) {
+			index = -index - 1;
+		}
+		if(this.count == this.grades.length) {
+			this.grades = Arrays.copyOf(this.grades, Math.max(8, this.count * 2));
+		}
+		System.arraycopy(this.grades, index, this.grades, index + 1, this.count - index);
+		this.grades[index] = grade;
+		this.count++;
+
+		this.sum += grade;
+		this.sumOfSquares += grade * grade;
+		this.histogram[bucket(grade)]++;
+	}
+
+	private void remove(double grade) {
+		int index = Arrays.binarySearch(this.grades, 0, this.count, grade);
+		if(index < 0) {
+			return;
+		}
+		System.arraycopy(this.grades, index + 1, this.grades, index, this.count - index - 1);
+		this.count--;
+
+		this.sum -= grade;
+		this.sumOfSquares -= grade * grade;
+		this.histogram[bucket(grade)]--;
+	}
+
+	private int bucket(double grade) {
+		if(this.points <= 0) {
+			return BUCKETS - 1;
+		}
+		int bucket = (int) (grade / this.points * BUCKETS);
+		return Math.max(0, Math.min(BUCKETS - 1, bucket));
+	}
+}
@@ -0,0 +1,64 @@
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Which cells of the grade matrix have a comment, without the comment text. The text is fetched when a comment is opened.
+ *
+ * There is a bitmap per assignment with a bit per student, packed into 32 bit words so it can be read as is on the client,
+ * ie the bit for a student is (bitmaps[column][row >>> 5] >>> (row & 31)) & 1.
+ */
+public class GbCommentIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Getter
+	private final long[] assignmentIds;
+
+	@Getter
+	private final String[] studentUuids;
+
+	@Getter
+	private final int[][] bitmaps;
+
+	/**
+	 * @param assignmentIds the assignments, in column order
+	 * @param studentUuids the students, in row order
+	 */
+	public GbCommentIndex(List<Long> assignmentIds, List<String> studentUuids) {
+		this.assignmentIds = new long[assignmentIds.size()];
+		this.bitmaps = new int[assignmentIds.size()][];
+		for(int col = 0; col < this.assignmentIds.length; col++) {
+			this.assignmentIds[col] = assignmentIds.get(col);
+			this.bitmaps[col] = newBitmap(studentUuids.size());
+		}
+		this.studentUuids = studentUuids.toArray(new String[studentUuids.size()]);
+	}
+
+	public void setHasComment(int col, int row) {
+		set(this.bitmaps[col], row);
+	}
+
+	public boolean hasComment(int col, int row) {
+		return get(this.bitmaps[col], row);
+	}
+
+	/**
+	 * @param rows number of students
+	 * @return an empty bitmap for a column
+	 */
+	public static int[] newBitmap(int rows) {
+		return new int[(rows + 31) >>> 5];
+	}
+
+	public static void set(int[] bitmap, int row) {
+		bitmap[row >>> 5] |= 1 << (row & 31);
+	}
+
+	public static boolean get(int[] bitmap, int row) {
+		return (bitmap[row >>> 5] & (1 << (row & 31))) != 0;
+	}
+}
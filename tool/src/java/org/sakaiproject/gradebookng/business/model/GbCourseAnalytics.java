@@ -0,0 +1,173 @@
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * A snapshot of analytics for a whole gradebook, for dashboards. This is what the analytics endpoint returns.
+ *
+ * Student percentages are the points earned over the points possible for the counted items the student has a grade for.
+ * Extra credit items add to the points earned only. The distributions are of student percentages, in buckets of 10%,
+ * with 100% and over in the last bucket.
+ *
+ * These are raw points, so category weighting and drop rules are not applied. In a weighted gradebook, or one that drops
+ * grades, the percentages, at risk count and distributions will not match the course grade.
+ *
+ * A pending snapshot has no data. It is returned while the first snapshot for a site is being computed.
+ */
+public class GbCourseAnalytics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Number of buckets in each distribution
+	 */
+	public static final int BUCKETS = 10;
+
+	@Getter
+	private final String siteId;
+
+	/**
+	 * True if the snapshot is still being computed, in which case there is no data yet
+	 */
+	@Getter
+	private final boolean pending;
+
+	/**
+	 * When the snapshot was computed
+	 */
+	@Getter
+	private final long computed;
+
+	@Getter
+	private final int studentCount;
+
+	/**
+	 * Students under this percentage are at risk
+	 */
+	@Getter
+	private final double atRiskThreshold;
+
+	@Getter
+	private final int atRiskCount;
+
+	@Getter
+	private final List<CategoryAverage> categoryAverages;
+
+	/**
+	 * Points earned by each student, keyed on uuid
+	 */
+	@Getter
+	private final Map<String, Double> studentTotals;
+
+	/**
+	 * Percentage for each student, keyed on uuid. Students with no grades are left out.
+	 */
+	@Getter
+	private final Map<String, Double> studentPercentages;
+
+	/**
+	 * Distribution for all students
+	 */
+	@Getter
+	private final int[] distribution;
+
+	/**
+	 * Distribution for each section and group
+	 */
+	@Getter
+	private final List<SectionDistribution> sectionDistributions;
+
+	public GbCourseAnalytics(String siteId, int studentCount, double atRiskThreshold, int atRiskCount, List<CategoryAverage> categoryAverages,
+			Map<String, Double> studentTotals, Map<String, Double> studentPercentages, int[] distribution, List<SectionDistribution> sectionDistributions) {
+		this.siteId = siteId;
+		this.pending = false;
+		this.computed = System.currentTimeMillis();
+		this.studentCount = studentCount;
+		this.atRiskThreshold = atRiskThreshold;
+		this.atRiskCount = atRiskCount;
+		this.categoryAverages = new ArrayList<>(categoryAverages);
+		this.studentTotals = new HashMap<>(studentTotals);
+		this.studentPercentages = new HashMap<>(studentPercentages);
+		this.distribution = distribution;
+		this.sectionDistributions = new ArrayList<>(sectionDistributions);
+	}
+
+	private GbCourseAnalytics(String siteId, double atRiskThreshold) {
+		this.siteId = siteId;
+		this.pending = true;
+		this.computed = 0;
+		this.studentCount = 0;
+		this.atRiskThreshold = atRiskThreshold;
+		this.atRiskCount = 0;
+		this.categoryAverages = new ArrayList<>();
+		this.studentTotals = new HashMap<>();
+		this.studentPercentages = new HashMap<>();
+		this.distribution = new int[BUCKETS];
+		this.sectionDistributions = new ArrayList<>();
+	}
+
+	/**
+	 * @return an empty snapshot for a site whose analytics are still being computed
+	 */
+	public static GbCourseAnalytics pending(String siteId, double atRiskThreshold) {
+		return new GbCourseAnalytics(siteId, atRiskThreshold);
+	}
+
+	/**
+	 * Average percentage over all grades in the items of a category
+	 */
+	public static class CategoryAverage implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The category name, null for items not in a category
+		 */
+		@Getter
+		private final String category;
+
+		@Getter
+		private final Double average;
+
+		/**
+		 * Number of grades the average is over
+		 */
+		@Getter
+		private final int graded;
+
+		public CategoryAverage(String category, Double average, int graded) {
+			this.category = category;
+			this.average = average;
+			this.graded = graded;
+		}
+	}
+
+	/**
+	 * Distribution of student percentages in a section or group
+	 */
+	public static class SectionDistribution implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		@Getter
+		private final String id;
+
+		@Getter
+		private final String title;
+
+		@Getter
+		private final int[] distribution;
+
+		public SectionDistribution(String id, String title, int[] distribution) {
+			this.id = id;
+			this.title = title;
+			this.distribution = distribution;
+		}
+	}
+}
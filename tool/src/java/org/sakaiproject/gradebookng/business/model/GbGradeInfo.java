@@ -4,8 +4,10 @@ import java.io.Serializable;
 
 import lombok.Getter;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.CompareToBuilder;
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.sakaiproject.gradebookng.business.util.StringPool;
 import org.sakaiproject.service.gradebook.shared.GradeDefinition;
 
 /**
@@ -21,12 +23,36 @@ public class GbGradeInfo implements Serializable, Comparable<GbGradeInfo> {
 	@Getter
 	private String grade;
 	
+	/**
+	 * The comment, or null if there is none or only whether there is one was kept
+	 */
 	@Getter
 	private String gradeComment;
 	
+	private boolean commented;
+	
 	public GbGradeInfo(GradeDefinition gd) {
 		this.grade = gd.getGrade();
 		this.gradeComment = gd.getGradeComment();
+		this.commented = StringUtils.isNotBlank(gd.getGradeComment());
+	}
+	
+	/**
+	 * Create with the grade, and the comment if included, taken from the given pool, so that repeated values are shared across the matrix
+	 * 
+	 * @param includeComment whether to keep the comment text, or only whether there is a comment
+	 */
+	public GbGradeInfo(GradeDefinition gd, StringPool pool, boolean includeComment) {
+		this.grade = pool.get(gd.getGrade());
+		this.gradeComment = includeComment ? pool.get(gd.getGradeComment()) : null;
+		this.commented = StringUtils.isNotBlank(gd.getGradeComment());
+	}
+	
+	/**
+	 * Whether there is a comment for the grade, even if the text wasn't kept
+	 */
+	public boolean hasComment() {
+		return this.commented;
 	}
 	
 	@Override
@@ -0,0 +1,39 @@
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * A page of the grade log for a cell, newest first, with the users that graded the entries in it.
+ *
+ * The cursor for the next page counts from the oldest entry, so it still points at the same entries if the cell is
+ * graded again while the log is being paged through.
+ */
+public class GbGradeLogPage implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Getter
+	private final List<GbGradeLog> entries;
+
+	/**
+	 * The graders of the entries, keyed on uuid. Graders that cannot be found are left out.
+	 */
+	@Getter
+	private final Map<String, GbUser> graders;
+
+	/**
+	 * Cursor for the next (older) page, or null if this is the last page
+	 */
+	@Getter
+	private final Integer nextCursor;
+
+	public GbGradeLogPage(List<GbGradeLog> entries, Map<String, GbUser> graders, Integer nextCursor) {
+		this.entries = entries;
+		this.graders = graders;
+		this.nextCursor = nextCursor;
+	}
+}
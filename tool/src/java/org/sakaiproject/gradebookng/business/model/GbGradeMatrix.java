@@ -0,0 +1,109 @@
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+import lombok.Getter;
+
+import org.apache.commons.lang.StringUtils;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Compact, columnar form of the grade matrix for the client side grid.
+ *
+ * Rather than an object per cell, there is an array per column. The assignment arrays are indexed by column and the
+ * student arrays by row, so the grade for a student is grades[column][row]. Comments are only flagged here, in a bitmap per
+ * column as in {@link GbCommentIndex}, the text is fetched when a comment is opened.
+ *
+ */
+public class GbGradeMatrix implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Getter
+	private long[] assignmentIds;
+
+	@Getter
+	private String[] assignmentNames;
+
+	@Getter
+	private Double[] assignmentPoints;
+
+	@Getter
+	private String[] assignmentCategories;
+
+	@Getter
+	private boolean[] assignmentExternal;
+
+	@Getter
+	private String[] studentUuids;
+
+	@Getter
+	private String[] studentEids;
+
+	@Getter
+	private String[] studentNames;
+
+	@Getter
+	private String[] courseGrades;
+
+	@Getter
+	private String[][] grades;
+
+	@Getter
+	private int[][] commentBitmaps;
+
+	/**
+	 * Transpose the matrix into columns
+	 *
+	 * @param assignments the assignments, in column order
+	 * @param students the students and their grades, in row order
+	 */
+	public GbGradeMatrix(List<Assignment> assignments, List<GbStudentGradeInfo> students) {
+
+		int cols = assignments.size();
+		int rows = students.size();
+
+		this.assignmentIds = new long[cols];
+		this.assignmentNames = new String[cols];
+		this.assignmentPoints = new Double[cols];
+		this.assignmentCategories = new String[cols];
+		this.assignmentExternal = new boolean[cols];
+		this.grades = new String[cols][rows];
+		this.commentBitmaps = new int[cols][];
+
+		this.studentUuids = new String[rows];
+		this.studentEids = new String[rows];
+		this.studentNames = new String[rows];
+		this.courseGrades = new String[rows];
+
+		for(int row = 0; row < rows; row++) {
+			GbStudentGradeInfo student = students.get(row);
+			this.studentUuids[row] = student.getStudentUuid();
+			this.studentEids[row] = student.getStudentEid();
+			this.studentNames[row] = student.getStudentLastName() + ", " + student.getStudentFirstName();
+			this.courseGrades[row] = student.getCourseGrade();
+		}
+
+		for(int col = 0; col < cols; col++) {
+			Assignment assignment = assignments.get(col);
+			this.assignmentIds[col] = assignment.getId();
+			this.assignmentNames[col] = assignment.getName();
+			this.assignmentPoints[col] = assignment.getPoints();
+			this.assignmentCategories[col] = assignment.getCategoryName();
+			this.assignmentExternal[col] = assignment.isExternallyMaintained();
+			this.commentBitmaps[col] = GbCommentIndex.newBitmap(rows);
+
+			for(int row = 0; row < rows; row++) {
+				GbGradeInfo gradeInfo = students.get(row).getGrades().get(assignment.getId());
+				if(gradeInfo != null) {
+					this.grades[col][row] = StringUtils.removeEnd(gradeInfo.getGrade(), ".0");
+					if(gradeInfo.hasComment()) {
+						GbCommentIndex.set(this.commentBitmaps[col], row);
+					}
+				}
+			}
+		}
+	}
+
+}
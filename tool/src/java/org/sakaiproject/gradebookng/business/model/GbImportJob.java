@@ -0,0 +1,96 @@
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Progress of a background grade import. This is what the progress endpoint returns so it holds counters only,
+ * the grades being imported are held by the import service.
+ *
+ * The checkpoint is the item and the row within that item that the job will continue from if it is resumed.
+ * The counters are updated by the thread running the job and read by the request threads checking on it.
+ */
+public class GbImportJob implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Status {
+		QUEUED,
+		RUNNING,
+		COMPLETE,
+		FAILED
+	}
+
+	@Getter
+	private String jobId;
+
+	@Getter
+	private String siteId;
+
+	@Getter
+	private String userId;
+
+	@Getter @Setter
+	private volatile Status status = Status.QUEUED;
+
+	@Getter
+	private int totalRows;
+
+	@Getter @Setter
+	private volatile int rowsProcessed;
+
+	@Getter @Setter
+	private volatile int rowsWritten;
+
+	@Getter @Setter
+	private volatile int errors;
+
+	@Getter @Setter
+	private volatile String lastError;
+
+	@Getter @Setter
+	private volatile int checkpointItem;
+
+	@Getter @Setter
+	private volatile int checkpointRow;
+
+	@Getter @Setter
+	private volatile long startTime;
+
+	//rows already processed when the current run started, so a resumed job reports the throughput of this run
+	@Setter
+	private volatile int startRow;
+
+	@Getter @Setter
+	private volatile long endTime;
+
+	public GbImportJob(String jobId, String siteId, String userId, int totalRows) {
+		this.jobId = jobId;
+		this.siteId = siteId;
+		this.userId = userId;
+		this.totalRows = totalRows;
+	}
+
+	/**
+	 * Rows processed per second since the job (or its last resume) started
+	 * @return
+	 */
+	public double getThroughput() {
+		if(this.startTime == 0) {
+			return 0;
+		}
+		long end = (this.endTime > 0) ? this.endTime : System.currentTimeMillis();
+		long elapsed = Math.max(end - this.startTime, 1);
+		return (this.rowsProcessed - this.startRow) * 1000d / elapsed;
+	}
+
+	/**
+	 * Has the job finished, one way or the other
+	 * @return
+	 */
+	public boolean isFinished() {
+		return this.status == Status.COMPLETE || this.status == Status.FAILED;
+	}
+}
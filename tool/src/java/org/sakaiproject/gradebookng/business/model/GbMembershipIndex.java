@@ -0,0 +1,57 @@
+package org.sakaiproject.gradebookng.business.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Getter;
+
+/**
+ * The sections and groups in a site and who is in each of them, so that the grade matrix can be filtered to a
+ * section or group without going back to the site and course management services on every page load.
+ *
+ * Members are held as user uuids, keyed on the id of the {@link GbGroup}, ie the section eid or the group id.
+ */
+public class GbMembershipIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The sections and groups, sorted
+	 */
+	@Getter
+	private final List<GbGroup> groups = new ArrayList<>();
+
+	private final Map<String, Set<String>> members = new HashMap<>();
+
+	/**
+	 * Add a section or group and its members
+	 * @param group the section or group
+	 * @param memberUuids uuids of the users in it
+	 */
+	public void add(GbGroup group, Set<String> memberUuids) {
+		this.groups.add(group);
+		this.members.put(group.getId(), memberUuids);
+	}
+
+	/**
+	 * Sort the sections and groups. Call once all are added
+	 */
+	public void sort() {
+		Collections.sort(this.groups);
+	}
+
+	/**
+	 * Get the members of a section or group
+	 * @param groupId the section eid or group id
+	 * @return the uuids of the members, or null if there is no such section or group
+	 */
+	public Set<String> getMembers(String groupId) {
+		Set<String> memberUuids = this.members.get(groupId);
+		return (memberUuids != null) ? Collections.unmodifiableSet(memberUuids) : null;
+	}
+}
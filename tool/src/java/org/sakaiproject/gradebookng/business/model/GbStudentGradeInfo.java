@@ -57,6 +57,15 @@ public class GbStudentGradeInfo implements Serializable
 		this.grades = new HashMap<Long,GbGradeInfo>();
 	}
 	
+	public GbStudentGradeInfo(GbUser u) {
+		this.studentUuid = u.getUserUuid();
+		this.studentEid = u.getEid();
+		this.studentFirstName = u.getFirstName();
+		this.studentLastName = u.getLastName();
+		this.studentDisplayName = u.getDisplayName();
+		this.grades = new HashMap<Long,GbGradeInfo>();
+	}
+	
 	/**
 	 * Helper to add a grade to the map
 	 * 
@@ -9,7 +9,8 @@ package org.sakaiproject.gradebookng.business.model;
 public enum GbStudentSortType {
 
 	LAST_NAME,
-	FIRST_NAME;
+	FIRST_NAME,
+	DISPLAY_NAME;
 	
 	public GbStudentSortType getDefault() {
 		return GbStudentSortType.LAST_NAME;
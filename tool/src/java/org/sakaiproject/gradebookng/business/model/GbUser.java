@@ -1,9 +1,15 @@
 package org.sakaiproject.gradebookng.business.model;
 
 import java.io.Serializable;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
 import lombok.Getter;
 
+import org.apache.commons.lang.StringUtils;
 import org.sakaiproject.user.api.User;
 
 /**
@@ -28,10 +34,65 @@ public class GbUser implements Serializable {
 	@Getter
 	private String displayName;
 	
+	@Getter
+	private String eid;
+	
+	@Getter
+	private String firstName;
+	
+	@Getter
+	private String lastName;
+	
+	/**
+	 * Keys for sorting by name, by sort type and locale. Built when first needed and kept for as long as this user is,
+	 * so a roster is only collated once rather than on every sort
+	 */
+	private transient Map<String, CollationKey> sortKeys;
+	
 	public GbUser(User u){
 		this.userUuid = u.getId();
 		this.displayId = u.getDisplayId();
 		this.displayName = u.getDisplayName();
+		this.eid = u.getEid();
+		this.firstName = u.getFirstName();
+		this.lastName = u.getLastName();
+	}
+	
+	/**
+	 * Get the key for sorting this user by name
+	 * 
+	 * @param sortType the name to sort by
+	 * @param locale the locale the key is for
+	 * @param collator a collator for the locale
+	 * @return
+	 */
+	public synchronized CollationKey getSortKey(GbStudentSortType sortType, Locale locale, Collator collator) {
+		if(this.sortKeys == null) {
+			this.sortKeys = new HashMap<>();
+		}
+		
+		String cacheKey = sortType.name() + "_" + locale;
+		CollationKey sortKey = this.sortKeys.get(cacheKey);
+		if(sortKey == null) {
+			sortKey = collator.getCollationKey(getSortName(sortType));
+			this.sortKeys.put(cacheKey, sortKey);
+		}
+		return sortKey;
+	}
+	
+	/**
+	 * The name to sort on. The other name is included so that users with the same first or last name are in order.
+	 */
+	private String getSortName(GbStudentSortType sortType) {
+		switch(sortType) {
+			case FIRST_NAME:
+				return StringUtils.defaultString(this.firstName) + " " + StringUtils.defaultString(this.lastName);
+			case DISPLAY_NAME:
+				return StringUtils.defaultString(this.displayName);
+			case LAST_NAME:
+			default:
+				return StringUtils.defaultString(this.lastName) + " " + StringUtils.defaultString(this.firstName);
+		}
 	}
 	
 }
@@ -17,9 +17,13 @@ public class ImportColumn implements Serializable {
     public static final int TYPE_REGULAR = 0;
     public static final int TYPE_ITEM_WITH_POINTS = 1;
     public static final int TYPE_ITEM_WITH_COMMENTS = 2;
+    /**
+     * An item header, ie "{0} [{1}]", where the points are not a number. The points are null.
+     */
+    public static final int TYPE_ITEM_WITH_INVALID_POINTS = 3;
 
     private String columnTitle;
-    private String points;
+    private Double points;
     private int type = TYPE_REGULAR;
 
 //    public ImportColumn(String columnTitle, String points, int type) {
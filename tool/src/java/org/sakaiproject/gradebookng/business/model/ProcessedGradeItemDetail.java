@@ -14,4 +14,21 @@ public class ProcessedGradeItemDetail implements Serializable {
     private String studentUuid;
     private String grade;
     private String comment;
+    private ChangeType changeType = ChangeType.UNCHANGED;
+
+    /**
+     * What importing this cell would change, relative to the current grade
+     */
+    public enum ChangeType {
+        /** a grade where there is currently none */
+        NEW,
+        /** a different grade */
+        UPDATE,
+        /** the same (or no) grade, but a different comment */
+        COMMENT_ONLY,
+        /** nothing to write */
+        UNCHANGED,
+        /** a grade or comment for a student that is not in the site, which can't be written */
+        UNKNOWN_STUDENT
+    }
 }
@@ -0,0 +1,58 @@
+package org.sakaiproject.gradebookng.business.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Canonicalises repeated strings, ie grades like "10.0" and short comments like "late", so that each distinct value is
+ * held once rather than once per cell. Shared references are also kept when the result is serialised, so this helps
+ * cached matrices and the Wicket page store as well as the live heap.
+ *
+ * A pool is meant for a single matrix build and is then thrown away, unlike String.intern(). It is bounded: once full,
+ * strings that are not already pooled are returned as is, and long strings are never pooled as they are unlikely to repeat.
+ * Not thread safe.
+ */
+public class StringPool {
+
+	private final Map<String, String> pool = new HashMap<>();
+
+	private final int maxSize;
+
+	private final int maxLength;
+
+	/**
+	 * @param maxSize the most distinct strings to hold
+	 * @param maxLength the longest string to pool
+	 */
+	public StringPool(int maxSize, int maxLength) {
+		this.maxSize = maxSize;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Get the pooled copy of a string
+	 *
+	 * @param s the string, may be null
+	 * @return the pooled string equal to s, or s itself if it is not pooled
+	 */
+	public String get(String s) {
+		if(s == null || s.length() > this.maxLength) {
+			return s;
+		}
+		String pooled = this.pool.get(s);
+		if(pooled != null) {
+			return pooled;
+		}
+		if(this.pool.size() < this.maxSize) {
+			this.pool.put(s, s);
+		}
+		return s;
+	}
+
+	/**
+	 * @return the number of distinct strings pooled
+	 */
+	public int size() {
+		return this.pool.size();
+	}
+}
@@ -0,0 +1,87 @@
+package org.sakaiproject.gradebookng.framework;
+
+import java.util.Observable;
+import java.util.Observer;
+
+import lombok.Setter;
+import lombok.extern.apachecommons.CommonsLog;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
+import org.sakaiproject.authz.api.AuthzGroupService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.site.api.SiteService;
+
+/**
+ * Sakai event observer that clears the cached roster and section/group membership for a site when its membership or
+ * permissions change, so that the gradebook picks up the change without waiting for the cache to expire.
+ *
+ * Events from all nodes are observed so that each node clears its own copy.
+ */
+@CommonsLog
+public class GradebookNgMembershipObserver implements Observer {
+
+	private static final String[] EVENTS = {
+		SiteService.SECURE_UPDATE_SITE,
+		SiteService.SECURE_UPDATE_SITE_MEMBERSHIP,
+		SiteService.SECURE_UPDATE_GROUP_MEMBERSHIP,
+		SiteService.SECURE_REMOVE_SITE,
+		AuthzGroupService.SECURE_UPDATE_AUTHZ_GROUP,
+		AuthzGroupService.SECURE_UPDATE_OWN_AUTHZ_GROUP
+	};
+
+	private static final String SITE_REFERENCE = "/site/";
+
+	@Setter
+	private EventTrackingService eventTrackingService;
+
+	@Setter
+	private GradebookNgBusinessService businessService;
+
+	public void init() {
+		eventTrackingService.addObserver(this);
+	}
+
+	public void destroy() {
+		eventTrackingService.deleteObserver(this);
+	}
+
+	@Override
+	public void update(Observable o, Object arg) {
+		if (!(arg instanceof Event)) {
+			return;
+		}
+
+		Event event = (Event) arg;
+		if (!ArrayUtils.contains(EVENTS, event.getEvent())) {
+			return;
+		}
+
+		String siteId = getSiteId(event.getResource());
+		if (siteId != null) {
+			log.debug("Membership changed for site " + siteId + " (" + event.getEvent() + "), clearing cached roster");
+			businessService.invalidateMembership(siteId);
+		}
+	}
+
+	/**
+	 * Get the site id from a site, group or realm reference, eg /site/{siteId}, /site/{siteId}/group/{groupId} or /realm//site/{siteId}
+	 * @param resource the event resource
+	 * @return the site id or null if the resource isn't for a site
+	 */
+	private String getSiteId(String resource) {
+		if (resource == null) {
+			return null;
+		}
+
+		int start = resource.indexOf(SITE_REFERENCE);
+		if (start == -1) {
+			return null;
+		}
+
+		return StringUtils.trimToNull(StringUtils.substringBefore(resource.substring(start + SITE_REFERENCE.length()), "/"));
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.sakaiproject.gradebookng.rest;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -19,13 +20,21 @@ import org.sakaiproject.entitybroker.entityprovider.capabilities.ActionsExecutab
 import org.sakaiproject.entitybroker.entityprovider.capabilities.AutoRegisterEntityProvider;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Describeable;
 import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
+import org.sakaiproject.entitybroker.entityprovider.extension.ActionReturn;
 import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
 import org.sakaiproject.entitybroker.util.AbstractEntityProvider;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
+import org.sakaiproject.gradebookng.business.GradeSaveResponse;
+import org.sakaiproject.gradebookng.business.GradebookNgAnalyticsService;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.GradebookNgImportService;
 import org.sakaiproject.gradebookng.business.Permissions;
+import org.sakaiproject.gradebookng.business.model.GbCommentIndex;
+import org.sakaiproject.gradebookng.business.model.GbCourseAnalytics;
 import org.sakaiproject.gradebookng.business.model.GbGradeCell;
+import org.sakaiproject.gradebookng.business.model.GbGradeMatrix;
+import org.sakaiproject.gradebookng.business.model.GbImportJob;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
@@ -180,6 +189,254 @@ public class GradebookNgEntityProvider extends AbstractEntityProvider implements
 			e.printStackTrace();
 		}
 	}
+	/**
+	 * The grade matrix for the site in a compact columnar form, for the client side grid.
+	 * /gbng/grades/{siteId} or /gbng/grades/{siteId}/{groupId} for just the members of a section or group
+	 * @param view
+	 * @return
+	 */
+	@EntityCustomAction(action = "grades", viewKey = EntityView.VIEW_LIST)
+	public GbGradeMatrix getGradeMatrix(EntityView view) {
+
+		// get siteId
+		String siteId = view.getPathSegment(2);
+
+		// check siteId supplied
+		if (StringUtils.isBlank(siteId)) {
+			throw new IllegalArgumentException(
+					"Site ID must be set in order to access GBNG data.");
+		}
+		checkValidSite(siteId);
+
+		// check instructor
+		checkInstructor(siteId);
+
+		List<Assignment> assignments = this.businessService.getGradebookAssignments(siteId);
+		if(assignments == null) {
+			throw new IllegalArgumentException("No gradebook in site");
+		}
+
+		// optional section or group
+		String groupId = StringUtils.trimToNull(view.getPathSegment(3));
+
+		return new GbGradeMatrix(assignments, this.businessService.buildGradeMatrix(siteId, assignments, groupId));
+	}
+
+	/**
+	 * Analytics for the whole gradebook, for dashboards. This is served from a snapshot that is computed in the background,
+	 * so may be a few minutes behind the latest grades. On the first request for a site the snapshot is pending and has no data,
+	 * so poll again. Percentages are of raw points, without category weighting or drop rules, so may differ from the course grade.
+	 * See {@link GbCourseAnalytics} for what it holds.
+	 * /gbng/analytics/{siteId}
+	 * @param view
+	 * @return
+	 */
+	@EntityCustomAction(action = "analytics", viewKey = EntityView.VIEW_LIST)
+	public GbCourseAnalytics getAnalytics(EntityView view) {
+
+		// get siteId
+		String siteId = view.getPathSegment(2);
+
+		// check siteId supplied
+		if (StringUtils.isBlank(siteId)) {
+			throw new IllegalArgumentException(
+					"Site ID must be set in order to access GBNG data.");
+		}
+		checkValidSite(siteId);
+
+		// check instructor
+		checkInstructor(siteId);
+
+		GbCourseAnalytics analytics = this.analyticsService.getAnalytics(siteId);
+		if(analytics == null) {
+			throw new IllegalArgumentException("No gradebook in site");
+		}
+		return analytics;
+	}
+
+	/**
+	 * Save a single grade from the client side grid. The existing comment is kept.
+	 * This is called for each cell edit so must be lightweight
+	 *
+	 * @param ref
+	 * @param params map, must include:
+	 * siteId
+	 * assignmentId
+	 * studentUuid
+	 * newGrade
+	 * and optionally oldGrade, for the concurrency check
+	 * @return the {@link GradeSaveResponse} as text
+	 */
+	@EntityCustomAction(action = "grade", viewKey = EntityView.VIEW_NEW)
+	public ActionReturn saveGrade(EntityReference ref, Map<String, Object> params) {
+
+		// get params
+		String siteId = (String) params.get("siteId");
+		long assignmentId = NumberUtils.toLong((String) params.get("assignmentId"));
+		String studentUuid = (String) params.get("studentUuid");
+		String oldGrade = (String) params.get("oldGrade");
+		String newGrade = (String) params.get("newGrade");
+
+		// check params supplied are valid
+		if (StringUtils.isBlank(siteId) || assignmentId == 0 || StringUtils.isBlank(studentUuid)) {
+			throw new IllegalArgumentException(
+					"Request data was missing / invalid");
+		}
+		checkValidSite(siteId);
+
+		// check instructor
+		checkInstructor(siteId);
+
+		// the comment has to be passed in or the gradebook service will clear it
+		String comment = this.businessService.getAssignmentGradeComment(siteId, assignmentId, studentUuid);
+
+		GradeSaveResponse result = this.businessService.saveGrade(siteId, assignmentId, studentUuid, oldGrade, newGrade, comment);
+		return new ActionReturn(result.name());
+	}
+
+	/**
+	 * Get the comment for a grade. The grid only has a flag for whether there is a comment, this gets the text when it is opened.
+	 * /gbng/comment/{siteId}/{assignmentId}/{studentUuid}
+	 * @param view
+	 * @return the comment as text, empty if none
+	 */
+	@EntityCustomAction(action = "comment", viewKey = EntityView.VIEW_LIST)
+	public ActionReturn getComment(EntityView view) {
+
+		// get params
+		String siteId = view.getPathSegment(2);
+		long assignmentId = NumberUtils.toLong(view.getPathSegment(3));
+		String studentUuid = view.getPathSegment(4);
+
+		// check params supplied
+		if (StringUtils.isBlank(siteId) || assignmentId == 0 || StringUtils.isBlank(studentUuid)) {
+			throw new IllegalArgumentException(
+					"Site ID, assignment ID and student UUID must be set in order to access GBNG data.");
+		}
+		checkValidSite(siteId);
+
+		// check instructor
+		checkInstructor(siteId);
+
+		return new ActionReturn(StringUtils.defaultString(this.businessService.getAssignmentGradeComment(siteId, assignmentId, studentUuid)));
+	}
+
+	/**
+	 * Which cells have a comment, as a bitmap per assignment. See {@link GbCommentIndex}.
+	 * /gbng/comments/{siteId} for all assignments or /gbng/comments/{siteId}/{assignmentId} for one
+	 * @param view
+	 * @return
+	 */
+	@EntityCustomAction(action = "comments", viewKey = EntityView.VIEW_LIST)
+	public GbCommentIndex getCommentIndex(EntityView view) {
+
+		// get siteId
+		String siteId = view.getPathSegment(2);
+
+		// check siteId supplied
+		if (StringUtils.isBlank(siteId)) {
+			throw new IllegalArgumentException(
+					"Site ID must be set in order to access GBNG data.");
+		}
+		checkValidSite(siteId);
+
+		// check instructor
+		checkInstructor(siteId);
+
+		// optional assignment
+		List<Long> assignmentIds = new ArrayList<>();
+		long assignmentId = NumberUtils.toLong(view.getPathSegment(3));
+		if(assignmentId != 0) {
+			assignmentIds.add(assignmentId);
+		} else {
+			List<Assignment> assignments = this.businessService.getGradebookAssignments(siteId);
+			if(assignments == null) {
+				throw new IllegalArgumentException("No gradebook in site");
+			}
+			for(Assignment assignment: assignments) {
+				assignmentIds.add(assignment.getId());
+			}
+		}
+
+		GbCommentIndex index = this.businessService.getCommentIndex(siteId, assignmentIds);
+		if(index == null) {
+			throw new IllegalArgumentException("No gradebook in site");
+		}
+		return index;
+	}
+
+	/**
+	 * Progress of a background import, ie rows processed, errors and throughput.
+	 * /gbng/import-progress/{siteId}/{jobId}
+	 * This is designed to be polled while the import runs so must be lightweight
+	 * @param view
+	 * @return
+	 */
+	@EntityCustomAction(action = "import-progress", viewKey = EntityView.VIEW_LIST)
+	public GbImportJob getImportProgress(EntityView view) {
+
+		// get siteId and jobId
+		String siteId = view.getPathSegment(2);
+		String jobId = view.getPathSegment(3);
+
+		// check params supplied
+		if (StringUtils.isBlank(siteId) || StringUtils.isBlank(jobId)) {
+			throw new IllegalArgumentException(
+					"Site ID and job ID must be set in order to access GBNG data.");
+		}
+		checkValidSite(siteId);
+
+		// check instructor
+		checkInstructor(siteId);
+
+		return getImportJob(siteId, jobId);
+	}
+
+	/**
+	 * Resume a failed background import from its last checkpoint
+	 *
+	 * @param ref
+	 * @param params map, must include:
+	 * siteId
+	 * jobId
+	 */
+	@EntityCustomAction(action = "import-resume", viewKey = EntityView.VIEW_NEW)
+	public void resumeImport(EntityReference ref, Map<String, Object> params) {
+
+		// get params
+		String siteId = (String) params.get("siteId");
+		String jobId = (String) params.get("jobId");
+
+		// check params supplied are valid
+		if (StringUtils.isBlank(siteId) || StringUtils.isBlank(jobId)) {
+			throw new IllegalArgumentException(
+					"Request data was missing / invalid");
+		}
+		checkValidSite(siteId);
+
+		// check instructor
+		checkInstructor(siteId);
+
+		getImportJob(siteId, jobId);
+		if(!this.importService.resume(jobId)) {
+			throw new IllegalArgumentException("Import job has not failed so cannot be resumed");
+		}
+	}
+
+	/**
+	 * Helper to get an import job, ensuring it belongs to the site. Throws IllegalArgumentException if not.
+	 * @param siteId
+	 * @param jobId
+	 * @return
+	 */
+	private GbImportJob getImportJob(String siteId, String jobId) {
+		GbImportJob job = this.importService.getJob(jobId);
+		if(job == null || !StringUtils.equals(siteId, job.getSiteId())) {
+			throw new IllegalArgumentException("Invalid import job id");
+		}
+		return job;
+	}
+
 	/**
 	 * Helper to check if the user is an instructor. Throws IllegalArgumentException if not.
 	 * We don't currently need the value that this produces so we don't return it.
@@ -250,5 +507,11 @@ public class GradebookNgEntityProvider extends AbstractEntityProvider implements
 	
 	@Setter
 	private GradebookNgBusinessService businessService;
+
+	@Setter
+	private GradebookNgImportService importService;
+
+	@Setter
+	private GradebookNgAnalyticsService analyticsService;
 	
 }
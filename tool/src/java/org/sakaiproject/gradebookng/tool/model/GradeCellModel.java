@@ -0,0 +1,93 @@
+package org.sakaiproject.gradebookng.tool.model;
+
+import java.io.Serializable;
+
+import lombok.Getter;
+
+import org.apache.wicket.model.AbstractReadOnlyModel;
+import org.apache.wicket.model.IModel;
+import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
+import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
+
+/**
+ * Model for a grade cell. Rather than copying the data into each cell, it refers to the column, which is shared by every
+ * cell in the column, and to the row, which is the table's model for the student. The grade is looked up from the row when needed.
+ * 
+ * The student uuid is kept from when the cell is built, so the comment and grade log windows can get it in a later
+ * request without loading the row, and with it the whole matrix.
+ */
+public class GradeCellModel extends AbstractReadOnlyModel<GbGradeInfo> {
+
+	private static final long serialVersionUID = 1L;
+
+	@Getter
+	private final Column column;
+
+	private final IModel<GbStudentGradeInfo> row;
+
+	@Getter
+	private final String studentUuid;
+
+	/**
+	 * @param column the column
+	 * @param row the row, which must be loaded, ie as when the table populates the cell
+	 */
+	public GradeCellModel(Column column, IModel<GbStudentGradeInfo> row) {
+		this.column = column;
+		this.row = row;
+		this.studentUuid = row.getObject().getStudentUuid();
+	}
+
+	/**
+	 * @return the grade for this cell, or null if there is no grade
+	 */
+	@Override
+	public GbGradeInfo getObject() {
+		GbStudentGradeInfo student = this.row.getObject();
+		if(student == null) {
+			//the student has been removed from the site since the page was built
+			return null;
+		}
+		return student.getGrades().get(this.column.getAssignmentId());
+	}
+
+	@Override
+	public void detach() {
+		this.row.detach();
+	}
+
+	public Long getAssignmentId() {
+		return this.column.getAssignmentId();
+	}
+
+	public Double getAssignmentPoints() {
+		return this.column.getAssignmentPoints();
+	}
+
+	public boolean isExternal() {
+		return this.column.isExternal();
+	}
+
+	/**
+	 * The data that is the same for every cell in a column. There is one instance per column.
+	 */
+	public static class Column implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		@Getter
+		private final Long assignmentId;
+
+		@Getter
+		private final Double assignmentPoints;
+
+		@Getter
+		private final boolean external;
+
+		public Column(Long assignmentId, Double assignmentPoints, boolean external) {
+			this.assignmentId = assignmentId;
+			this.assignmentPoints = assignmentPoints;
+			this.external = external;
+		}
+	}
+}
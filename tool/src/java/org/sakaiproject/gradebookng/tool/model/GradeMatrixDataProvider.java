@@ -0,0 +1,83 @@
+package org.sakaiproject.gradebookng.tool.model;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.LoadableDetachableModel;
+import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
+
+/**
+ * Data provider for the grade matrix. The matrix is held in a detachable model so it is not kept in the page store, and
+ * each row model only holds the student's uuid, so the rows can be found again in the matrix when it is reloaded.
+ */
+public class GradeMatrixDataProvider implements IDataProvider<GbStudentGradeInfo> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final IModel<List<GbStudentGradeInfo>> matrix;
+
+	//index of the loaded matrix by student uuid, rebuilt whenever the matrix is reloaded
+	private transient Map<String, GbStudentGradeInfo> index;
+
+	public GradeMatrixDataProvider(IModel<List<GbStudentGradeInfo>> matrix) {
+		this.matrix = matrix;
+	}
+
+	@Override
+	public Iterator<? extends GbStudentGradeInfo> iterator(long first, long count) {
+		List<GbStudentGradeInfo> grades = this.matrix.getObject();
+		int from = (int) Math.min(first, grades.size());
+		int to = (int) Math.min(first + count, grades.size());
+		return grades.subList(from, to).iterator();
+	}
+
+	@Override
+	public long size() {
+		return this.matrix.getObject().size();
+	}
+
+	@Override
+	public IModel<GbStudentGradeInfo> model(GbStudentGradeInfo object) {
+		return new RowModel(object);
+	}
+
+	@Override
+	public void detach() {
+		this.matrix.detach();
+		this.index = null;
+	}
+
+	private GbStudentGradeInfo getRow(String studentUuid) {
+		if(this.index == null) {
+			this.index = new HashMap<>();
+			for(GbStudentGradeInfo row: this.matrix.getObject()) {
+				this.index.put(row.getStudentUuid(), row);
+			}
+		}
+		return this.index.get(studentUuid);
+	}
+
+	/**
+	 * Model for a row. Only the uuid is kept when detached.
+	 */
+	private class RowModel extends LoadableDetachableModel<GbStudentGradeInfo> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String studentUuid;
+
+		RowModel(GbStudentGradeInfo row) {
+			super(row);
+			this.studentUuid = row.getStudentUuid();
+		}
+
+		@Override
+		protected GbStudentGradeInfo load() {
+			return getRow(this.studentUuid);
+		}
+	}
+}
@@ -8,6 +8,7 @@ import lombok.Getter;
 import lombok.Setter;
 
 import org.sakaiproject.gradebookng.business.model.GbAssignmentGradeSortOrder;
+import org.sakaiproject.gradebookng.business.model.GbStudentSortType;
 
 /**
  * DTO for storing data in the session so that state is preserved between requests.
@@ -21,6 +22,7 @@ public class GradebookUiSettings implements Serializable {
 
 	public GradebookUiSettings() {
 		this.categoriesEnabled = false;
+		this.studentSortOrder = GbStudentSortType.LAST_NAME;
 		assignmentVisibility = new HashMap<Long, Boolean>();
 	}
 
@@ -34,9 +36,21 @@ public class GradebookUiSettings implements Serializable {
 	@Getter @Setter
 	private GbAssignmentGradeSortOrder assignmentSortOrder;
 	
+	/**
+	 * For sorting the students by name
+	 */
+	@Getter @Setter
+	private GbStudentSortType studentSortOrder;
+	
 	@Getter @Setter
 	private boolean categoriesEnabled;
 
+	/**
+	 * Render the grades client side, for large courses
+	 */
+	@Getter @Setter
+	private boolean virtualGridEnabled;
+
 	private Map<Long, Boolean> assignmentVisibility;
 
 	public boolean isAssignmentVisible(Long assignmentId) {
@@ -5,12 +5,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.time.StopWatch;
 import org.apache.wicket.AttributeModifier;
 import org.apache.wicket.Component;
 import org.apache.wicket.RestartResponseException;
 import org.apache.wicket.Session;
 import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.form.AjaxFormComponentUpdatingBehavior;
 import org.apache.wicket.ajax.markup.html.form.AjaxButton;
 import org.apache.wicket.extensions.ajax.markup.html.modal.ModalWindow;
 import org.apache.wicket.extensions.ajax.markup.html.modal.ModalWindow.MaskType;
@@ -20,26 +22,31 @@ import org.apache.wicket.extensions.markup.html.repeater.data.table.HeadersToolb
 import org.apache.wicket.extensions.markup.html.repeater.data.table.IColumn;
 import org.apache.wicket.extensions.markup.html.repeater.data.table.NavigationToolbar;
 import org.apache.wicket.extensions.markup.html.repeater.data.table.PropertyColumn;
+import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.form.ChoiceRenderer;
 import org.apache.wicket.markup.html.form.DropDownChoice;
 import org.apache.wicket.markup.html.form.Form;
 import org.apache.wicket.markup.html.panel.EmptyPanel;
 import org.apache.wicket.markup.repeater.Item;
-import org.apache.wicket.markup.repeater.data.ListDataProvider;
+import org.apache.wicket.model.AbstractReadOnlyModel;
 import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.model.ResourceModel;
 import org.apache.wicket.model.StringResourceModel;
+import org.sakaiproject.gradebookng.business.model.GbAssignmentGradeSortOrder;
 import org.sakaiproject.gradebookng.business.model.GbGroup;
 import org.sakaiproject.gradebookng.business.model.GbStudentSortType;
-import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
 import org.sakaiproject.gradebookng.business.util.Temp;
+import org.sakaiproject.gradebookng.tool.model.GradeCellModel;
+import org.sakaiproject.gradebookng.tool.model.GradeMatrixDataProvider;
 import org.sakaiproject.gradebookng.tool.model.GradebookUiSettings;
 import org.sakaiproject.gradebookng.tool.panels.AddGradeItemPanel;
 import org.sakaiproject.gradebookng.tool.panels.AssignmentColumnHeaderPanel;
 import org.sakaiproject.gradebookng.tool.panels.GradeItemCellPanel;
+import org.sakaiproject.gradebookng.tool.panels.GradeItemCellPopoverPanel;
 import org.sakaiproject.gradebookng.tool.panels.StudentNameCellPanel;
 import org.sakaiproject.gradebookng.tool.panels.StudentNameColumnHeaderPanel;
 import org.sakaiproject.gradebookng.tool.panels.ToggleGradeItemsToolbarPanel;
@@ -60,8 +67,42 @@ public class GradebookPage extends BasePage {
 	ModalWindow updateUngradedItemsWindow;
 	ModalWindow gradeLogWindow;
 	ModalWindow gradeCommentWindow;
+	ModalWindow gradeStatisticsWindow;
 
 	Form<Void> form;
+	
+	//the grade table, if it is being rendered server side
+	DataTable table;
+	
+	/**
+	 * The large data for the page is held in detachable models so that it isn't serialized into the page store.
+	 * It is loaded again if needed in a later request.
+	 */
+	private final IModel<List<Assignment>> assignmentsModel = new LoadableDetachableModel<List<Assignment>>() {
+		@Override
+		protected List<Assignment> load() {
+			return businessService.getGradebookAssignments();
+		}
+	};
+	
+	private final IModel<List<GbStudentGradeInfo>> gradesModel = new LoadableDetachableModel<List<GbStudentGradeInfo>>() {
+		@Override
+		protected List<GbStudentGradeInfo> load() {
+			GradebookUiSettings settings = getUiSettings();
+			GbAssignmentGradeSortOrder sortOrder = (settings != null) ? settings.getAssignmentSortOrder() : null;
+			GbStudentSortType studentSortOrder = (settings != null) ? settings.getStudentSortOrder() : null;
+			String groupFilter = (settings != null) ? settings.getGroupFilter() : null;
+			List<GbStudentGradeInfo> grades = businessService.buildGradeMatrix(assignmentsModel.getObject(), sortOrder, studentSortOrder, groupFilter);
+			return (grades != null) ? grades : new ArrayList<GbStudentGradeInfo>();
+		}
+	};
+	
+	private final IModel<Map<String, List<Long>>> categorizedAssignmentOrderModel = new LoadableDetachableModel<Map<String, List<Long>>>() {
+		@Override
+		protected Map<String, List<Long>> load() {
+			return businessService.getCategorizedAssignmentsOrder();
+		}
+	};
 
 	@SuppressWarnings({ "rawtypes", "unchecked", "serial" })
 	public GradebookPage() {
@@ -107,6 +148,12 @@ public class GradebookPage extends BasePage {
 		gradeCommentWindow.setUseInitialHeight(false);
 		form.add(gradeCommentWindow);
 		
+		gradeStatisticsWindow = new ModalWindow("gradeStatisticsWindow");
+		gradeStatisticsWindow.setMaskType(MaskType.TRANSPARENT);
+		gradeStatisticsWindow.setResizable(false);
+		gradeStatisticsWindow.setUseInitialHeight(false);
+		form.add(gradeStatisticsWindow);
+		
 		
 		AjaxButton addGradeItem = new AjaxButton("addGradeItem") {
 			@Override
@@ -123,25 +170,158 @@ public class GradebookPage extends BasePage {
 		GradebookUiSettings settings = this.getUiSettings();
 		
         //get list of assignments. this allows us to build the columns and then fetch the grades for each student for each assignment from the map
-        final List<Assignment> assignments = this.businessService.getGradebookAssignments();
+        final List<Assignment> assignments = this.assignmentsModel.getObject();
 		Temp.time("getGradebookAssignments", stopwatch.getTime());
         
-        //get the grade matrix. It should be sorted if we have that info
-        final List<GbStudentGradeInfo> grades = businessService.buildGradeMatrix(assignments, (settings != null) ? settings.getAssignmentSortOrder() : null);
+        //large courses can use the client side grid, which loads and renders the grades itself via the gbng/grades endpoint
+        //so neither the grade matrix nor the cell components are built here
+        final boolean virtualGrid = settings != null && settings.isVirtualGridEnabled();
+        if(virtualGrid) {
+        	if(assignments == null) {
+        		throw new RestartResponseException(NoDataPage.class);
+        	}
+        	form.add(new WebMarkupContainer("table").setVisible(false));
+        } else {
+        	this.table = buildGradeTable(assignments, stopwatch);
+        	form.add(this.table);
+        }
         
-		Temp.time("buildGradeMatrix", stopwatch.getTime());
+        WebMarkupContainer grid = new WebMarkupContainer("grid");
+        grid.add(new AttributeModifier("data-siteid", this.businessService.getCurrentSiteId()));
+        grid.add(new AttributeModifier("data-studentsheading", new ResourceModel("column.header.students")));
+        if(settings != null && settings.getGroupFilter() != null) {
+        	grid.add(new AttributeModifier("data-groupid", settings.getGroupFilter()));
+        }
+        grid.setVisible(virtualGrid);
+        form.add(grid);
+
+        // Populate the toolbar 
+        Label gradeItemSummary = new Label("gradeItemSummary", new StringResourceModel("label.toolbar.gradeitemsummary", null, assignments.size(), assignments.size()));
+        gradeItemSummary.setEscapeModelStrings(false);
+        form.add(gradeItemSummary);
+
+        AjaxButton toggleCategoriesToolbarItem = new AjaxButton("toggleCategoriesToolbarItem") {
+            @Override
+            protected void onInitialize() {
+                super.onInitialize();
+                GradebookUiSettings settings = getUiSettings();
+                if (settings != null && settings.isCategoriesEnabled()) {
+                    add(new AttributeModifier("class", "on"));
+                }
+            }
+            @Override
+            protected void onSubmit(AjaxRequestTarget target, Form<?> form) {
+                GradebookUiSettings settings = getUiSettings();
+                if (settings == null) {
+                    settings = new GradebookUiSettings();
+                }
+                settings.setCategoriesEnabled(!settings.isCategoriesEnabled());
+                setUiSettings(settings);
+
+                if (settings.isCategoriesEnabled()) {
+                    add(new AttributeModifier("class", "on"));
+                } else {
+                    add(new AttributeModifier("class", ""));
+                }
+                target.add(this);
+                target.appendJavaScript("sakai.gradebookng.spreadsheet.toggleCategories();");
+            }
+        };
+        toggleCategoriesToolbarItem.setVisible(!virtualGrid);
+        form.add(toggleCategoriesToolbarItem);
+
+        AjaxButton toggleVirtualGridToolbarItem = new AjaxButton("toggleVirtualGridToolbarItem") {
+            @Override
+            protected void onInitialize() {
+                super.onInitialize();
+                if (virtualGrid) {
+                    add(new AttributeModifier("class", "on"));
+                }
+            }
+            @Override
+            protected void onSubmit(AjaxRequestTarget target, Form<?> form) {
+                GradebookUiSettings settings = getUiSettings();
+                if (settings == null) {
+                    settings = new GradebookUiSettings();
+                }
+                settings.setVirtualGridEnabled(!settings.isVirtualGridEnabled());
+                setUiSettings(settings);
+
+                //the two modes build the page differently so it is rebuilt
+                setResponsePage(new GradebookPage());
+            }
+        };
+        toggleVirtualGridToolbarItem.setDefaultFormProcessing(false);
+        form.add(toggleVirtualGridToolbarItem);
+
+        //section and group dropdown
+        final List<GbGroup> groups = this.businessService.getSiteSectionsAndGroups();
+    
+        DropDownChoice<GbGroup> groupFilter = new DropDownChoice<GbGroup>("groupFilter", groups, new ChoiceRenderer<GbGroup>() {
+          private static final long serialVersionUID = 1L;
+    
+          @Override
+          public Object getDisplayValue(GbGroup g) {
+            return g.getTitle();
+          }
+    
+          @Override
+          public String getIdValue(GbGroup g, int index) {
+            //the entry for all students has no id
+            return (g.getId() != null) ? g.getId() : g.getType().name();
+          }
+    
+        });
+    
+        //only the members of the selected section or group are loaded
+        groupFilter.add(new AjaxFormComponentUpdatingBehavior("change") {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void onUpdate(AjaxRequestTarget target) {
+                GbGroup selected = (GbGroup) getFormComponent().getModelObject();
+
+                GradebookUiSettings settings = getUiSettings();
+                if (settings == null) {
+                    settings = new GradebookUiSettings();
+                }
+                settings.setGroupFilter((selected != null) ? selected.getId() : null);
+                setUiSettings(settings);
+
+                //the students are different so the table is rendered again from the first page
+                setResponsePage(new GradebookPage());
+            }
+        });
+
+        groupFilter.setVisible(!groups.isEmpty());
+        groupFilter.setModel(Model.of(getSelectedGroup(groups, settings)));
+        groupFilter.setNullValid(false);
+        form.add(groupFilter);
+
+        add(new ToggleGradeItemsToolbarPanel("gradeItemsTogglePanel", assignments));
+        
+        //the cell popovers are built on the client from this
+        add(new GradeItemCellPopoverPanel("gradeItemCellPopoverTemplate"));
+        
+		Temp.time("Gradebook page done", stopwatch.getTime());
+
+	}
+	
+	/**
+	 * Build the table of students and grades, with a component for each cell
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked", "serial" })
+	private DataTable buildGradeTable(final List<Assignment> assignments, StopWatch stopwatch) {
 		
-		//if the grade matrix is null, we dont have any data
+		//if there are no assignments, we dont have a gradebook so there is no data
 		//TODO finish this page. Test by creating a new site and going to the tool
-		if(grades == null) {
+		if(assignments == null) {
 			throw new RestartResponseException(NoDataPage.class);
 		}
 		
-
-        final Map<String, List<Long>> categorizedAssignmentOrder = businessService.getCategorizedAssignmentsOrder();
-
+        //get the grade matrix. It is sorted if we have that info, and loaded on demand when the table renders
         //this could potentially be a sortable data provider
-        final ListDataProvider<GbStudentGradeInfo> studentGradeMatrix = new ListDataProvider<GbStudentGradeInfo>(grades);
+        final GradeMatrixDataProvider studentGradeMatrix = new GradeMatrixDataProvider(this.gradesModel);
         List<IColumn> cols = new ArrayList<IColumn>();
         
         //add an empty column that we can use as a handle for selecting the row
@@ -164,7 +344,7 @@ public class GradebookPage extends BasePage {
 
         	@Override
         	public Component getHeader(String componentId) {
-        		return new StudentNameColumnHeaderPanel(componentId, GbStudentSortType.LAST_NAME); //TODO this needs to come from somewhere, prefs maybe
+        		return new StudentNameColumnHeaderPanel(componentId, getStudentSortOrder());
         	}
         	
         	@Override
@@ -177,7 +357,7 @@ public class GradebookPage extends BasePage {
 				modelData.put("firstName", studentGradeInfo.getStudentFirstName());
 				modelData.put("lastName", studentGradeInfo.getStudentLastName());
 				modelData.put("displayName", studentGradeInfo.getStudentDisplayName());
-				modelData.put("sortType", GbStudentSortType.LAST_NAME); //TODO this needs to come from somewhere, prefs maybe
+				modelData.put("sortType", getStudentSortOrder());
 				
 				cellItem.add(new StudentNameCellPanel(componentId, Model.ofMap(modelData)));
 				cellItem.add(new AttributeModifier("data-studentUuid", studentGradeInfo.getStudentUuid()));
@@ -197,13 +377,27 @@ public class GradebookPage extends BasePage {
         
         
         //build the rest of the columns based on the assignment list       
-        for(final Assignment assignment: assignments) {
+        //the columns only keep the assignment id, the assignment is looked up from the model when needed
+        for(Assignment assignment: assignments) {
+        	
+        	final Long assignmentId = assignment.getId();
+        	
+        	//shared by every cell in the column
+        	final GradeCellModel.Column gradeColumn = new GradeCellModel.Column(assignmentId, assignment.getPoints(), assignment.isExternallyMaintained());
         	
         	AbstractColumn column = new AbstractColumn(new Model("")) {
 
             	@Override
             	public Component getHeader(String componentId) {
-            		AssignmentColumnHeaderPanel panel = new AssignmentColumnHeaderPanel(componentId, new Model<Assignment>(assignment));
+            		IModel<Assignment> assignmentModel = new AbstractReadOnlyModel<Assignment>() {
+            			@Override
+            			public Assignment getObject() {
+            				return getAssignment(assignmentId);
+            			}
+            		};
+            		AssignmentColumnHeaderPanel panel = new AssignmentColumnHeaderPanel(componentId, assignmentModel);
+                Assignment assignment = assignmentModel.getObject();
+                Map<String, List<Long>> categorizedAssignmentOrder = categorizedAssignmentOrderModel.getObject();
                 String category = assignment.getCategoryName();
                 int order = -1;
                 if (categorizedAssignmentOrder.containsKey(category)) {
@@ -221,18 +415,8 @@ public class GradebookPage extends BasePage {
             	
             	@Override
 				public void populateItem(Item cellItem, String componentId, IModel rowModel) {
-            		GbStudentGradeInfo studentGrades = (GbStudentGradeInfo) rowModel.getObject();
-            		
-            		GbGradeInfo gradeInfo = studentGrades.getGrades().get(assignment.getId());
-            		
-            		Map<String,Object> modelData = new HashMap<>();
-    				modelData.put("assignmentId", assignment.getId());
-    				modelData.put("assignmentPoints", assignment.getPoints()); //TODO might be able to set some of this higher up and use a getter in the subclasses, so its not passed around so much. It's common to the assignment....
-    				modelData.put("studentUuid", studentGrades.getStudentUuid());
-    				modelData.put("isExternal", assignment.isExternallyMaintained());
-    				modelData.put("gradeInfo", gradeInfo);
-    				
-    				cellItem.add(new GradeItemCellPanel(componentId, Model.ofMap(modelData)));
+            		//the cell only refers to the column and the row, nothing is copied into it
+    				cellItem.add(new GradeItemCellPanel(componentId, new GradeCellModel(gradeColumn, rowModel)));
     				
     				cellItem.setOutputMarkupId(true);
     				
@@ -253,74 +437,94 @@ public class GradebookPage extends BasePage {
         table.addBottomToolbar(new NavigationToolbar(table));
         table.addTopToolbar(new HeadersToolbar(table, null));
         table.add(new AttributeModifier("data-siteid", this.businessService.getCurrentSiteId()));
-        form.add(table);
-
-        // Populate the toolbar 
-        Label gradeItemSummary = new Label("gradeItemSummary", new StringResourceModel("label.toolbar.gradeitemsummary", null, assignments.size(), assignments.size()));
-        gradeItemSummary.setEscapeModelStrings(false);
-        form.add(gradeItemSummary);
-
-        AjaxButton toggleCategoriesToolbarItem = new AjaxButton("toggleCategoriesToolbarItem") {
-            @Override
-            protected void onInitialize() {
-                super.onInitialize();
-                GradebookUiSettings settings = getUiSettings();
-                if (settings != null && settings.isCategoriesEnabled()) {
-                    add(new AttributeModifier("class", "on"));
-                }
-            }
-            @Override
-            protected void onSubmit(AjaxRequestTarget target, Form<?> form) {
-                GradebookUiSettings settings = getUiSettings();
-                if (settings == null) {
-                    settings = new GradebookUiSettings();
-                }
-                settings.setCategoriesEnabled(!settings.isCategoriesEnabled());
-                setUiSettings(settings);
-
-                if (settings.isCategoriesEnabled()) {
-                    add(new AttributeModifier("class", "on"));
-                } else {
-                    add(new AttributeModifier("class", ""));
-                }
-                target.add(this);
-                target.appendJavaScript("sakai.gradebookng.spreadsheet.toggleCategories();");
-            }
-        };
-        form.add(toggleCategoriesToolbarItem);
-
-        //section and group dropdown
-        final List<GbGroup> groups = this.businessService.getSiteSectionsAndGroups();
-    
-        DropDownChoice<GbGroup> groupFilter = new DropDownChoice<GbGroup>("groupFilter", groups, new ChoiceRenderer<GbGroup>() {
-          private static final long serialVersionUID = 1L;
-    
-          @Override
-          public Object getDisplayValue(GbGroup g) {
-            return g.getTitle();
-          }
-    
-          @Override
-          public String getIdValue(GbGroup g, int index) {
-            return g.getId();
-          }
-    
-        });
-    
-        //TODO need to subclass the DDC to add the selectionchanged listener
-    
-        groupFilter.setVisible(!groups.isEmpty());
-        groupFilter.setModel(new Model<GbGroup>()); //TODO update this so its aware of the currently selected filter. Maybe the form needs to maintain state and have this as a param?
-        groupFilter.setDefaultModelObject(groups.get(0)); //TODO update this
-        groupFilter.setNullValid(false);
-        form.add(groupFilter);
-
-        add(new ToggleGradeItemsToolbarPanel("gradeItemsTogglePanel", assignments));
-        
-		Temp.time("Gradebook page done", stopwatch.getTime());
-
+        return table;
+	}
+	
+	
+	/**
+	 * Re-sort the rows of the grade table after the sort order in the settings has changed.
+	 * 
+	 * If all of the students are on the one page, the rows already in the browser are reordered to match the sorted matrix,
+	 * so none of the cells need to be rendered again. Otherwise the students on the page change, so the page is rendered again from the first page.
+	 * 
+	 * @param target
+	 */
+	public void refreshGradeTableOrder(AjaxRequestTarget target) {
+		if(this.table == null) {
+			return;
+		}
+		
+		//the matrix is sorted when it is loaded, so make sure it is loaded again with the new sort order
+		this.gradesModel.detach();
+		
+		if(this.table.getPageCount() > 1) {
+			this.table.setCurrentPage(0);
+			setResponsePage(this);
+			return;
+		}
+		
+		GradebookUiSettings settings = getUiSettings();
+		GbAssignmentGradeSortOrder sortOrder = settings.getAssignmentSortOrder();
+		
+		List<String> studentUuids = new ArrayList<String>();
+		for(GbStudentGradeInfo studentGradeInfo: this.gradesModel.getObject()) {
+			studentUuids.add(studentGradeInfo.getStudentUuid());
+		}
+		
+		target.appendJavaScript("sakai.gradebookng.spreadsheet.sortRows(['" + StringUtils.join(studentUuids, "','") + "'], '"
+				+ sortOrder.getAssignmentId() + "', '" + sortOrder.getDirection().toString().toLowerCase() + "');");
+	}
+	
+	/**
+	 * Get the name the students are sorted by
+	 * @return the sort type from the settings, or last name if not set
+	 */
+	private GbStudentSortType getStudentSortOrder() {
+		GradebookUiSettings settings = getUiSettings();
+		if(settings != null && settings.getStudentSortOrder() != null) {
+			return settings.getStudentSortOrder();
+		}
+		return GbStudentSortType.LAST_NAME;
+	}
+	
+	/**
+	 * Get the section or group that the grades are filtered to
+	 * @param groups the sections and groups, the first is for all students
+	 * @param settings the settings, may be null
+	 * @return the selected group, or the first if none is selected or the selected one is no longer in the site
+	 */
+	private GbGroup getSelectedGroup(List<GbGroup> groups, GradebookUiSettings settings) {
+		if(settings != null && settings.getGroupFilter() != null) {
+			for(GbGroup group: groups) {
+				if(settings.getGroupFilter().equals(group.getId())) {
+					return group;
+				}
+			}
+		}
+		return groups.get(0);
 	}
 	
+	/**
+	 * Get an assignment from the assignments model
+	 * @param assignmentId
+	 * @return the assignment, or null if it is no longer in the gradebook
+	 */
+	private Assignment getAssignment(Long assignmentId) {
+		for(Assignment assignment: this.assignmentsModel.getObject()) {
+			if(assignment.getId().equals(assignmentId)) {
+				return assignment;
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	protected void onDetach() {
+		super.onDetach();
+		this.assignmentsModel.detach();
+		this.gradesModel.detach();
+		this.categorizedAssignmentOrderModel.detach();
+	}
 	
 	/**
 	 * Getters for panels to get at modal windows
@@ -345,6 +549,10 @@ public class GradebookPage extends BasePage {
 	public ModalWindow getGradeCommentWindow() {
 		return this.gradeCommentWindow;
 	}
+	
+	public ModalWindow getGradeStatisticsWindow() {
+		return this.gradeStatisticsWindow;
+	}
 
 	/**
 	 * Getter for the GradebookUiSettings. Used to store a few UI related settings for the current session only.
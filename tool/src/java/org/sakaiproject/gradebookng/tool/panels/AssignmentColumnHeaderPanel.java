@@ -2,7 +2,6 @@ package org.sakaiproject.gradebookng.tool.panels;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.lang.Exception;
 
 import org.apache.wicket.AttributeModifier;
 import org.apache.wicket.ajax.AjaxRequestTarget;
@@ -12,10 +11,9 @@ import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.link.Link;
 import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.model.AbstractReadOnlyModel;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
-import org.apache.wicket.spring.injection.annot.SpringBean;
-import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.business.SortDirection;
 import org.sakaiproject.gradebookng.business.model.GbAssignmentGradeSortOrder;
 import org.sakaiproject.gradebookng.tool.model.GradebookUiSettings;
@@ -35,9 +33,6 @@ public class AssignmentColumnHeaderPanel extends Panel {
 	private static final long serialVersionUID = 1L;
 
 	private IModel<Assignment> modelData;
-	
-	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
-	private GradebookNgBusinessService businessService;
 
 	public AssignmentColumnHeaderPanel(String id, IModel<Assignment> modelData) {
 		super(id);
@@ -51,11 +46,11 @@ public class AssignmentColumnHeaderPanel extends Panel {
 		
 		final Assignment assignment = this.modelData.getObject();
 		
-		Link<String> title = new Link<String>("title", Model.of(assignment.getName())) {
+		AjaxLink<String> title = new AjaxLink<String>("title", Model.of(assignment.getName())) {
 			private static final long serialVersionUID = 1L;
 
 			@Override
-			public void onClick() {
+			public void onClick(AjaxRequestTarget target) {
 								
 				//toggle the sort direction on each click
 				GradebookPage gradebookPage = (GradebookPage) this.getPage();
@@ -76,8 +71,8 @@ public class AssignmentColumnHeaderPanel extends Panel {
 				//save settings
 				gradebookPage.setUiSettings(settings);
 				
-				//refresh
-				setResponsePage(new GradebookPage());
+				//refresh just the rows
+				gradebookPage.refreshGradeTableOrder(target);
 			}
 			
 		};
@@ -85,11 +80,20 @@ public class AssignmentColumnHeaderPanel extends Panel {
 		title.add(new Label("label", assignment.getName()));
 		
 		//set the class based on the sortOrder. May not be set for this assignment so match it
-		GradebookPage gradebookPage = (GradebookPage) this.getPage();
-		GradebookUiSettings settings = gradebookPage.getUiSettings();
-		if(settings != null && settings.getAssignmentSortOrder() != null && settings.getAssignmentSortOrder().getAssignmentId() == assignment.getId()) {
-			title.add(new AttributeModifier("class", "gb-sort-" + settings.getAssignmentSortOrder().getDirection().toString().toLowerCase()));
-		}
+		//this is worked out on each render as the sort can change without the header being rebuilt
+		title.add(new AttributeModifier("class", new AbstractReadOnlyModel<String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String getObject() {
+				GradebookPage gradebookPage = (GradebookPage) getPage();
+				GradebookUiSettings settings = gradebookPage.getUiSettings();
+				if(settings != null && settings.getAssignmentSortOrder() != null && settings.getAssignmentSortOrder().getAssignmentId() == assignment.getId()) {
+					return "gb-sort-" + settings.getAssignmentSortOrder().getDirection().toString().toLowerCase();
+				}
+				return null;
+			}
+		}));
 		
 		add(title);
 		
@@ -144,84 +148,23 @@ public class AssignmentColumnHeaderPanel extends Panel {
 			}
 		});
 		
-		add(new Link<Long>("viewAssignmentGradeStatistics", Model.of(assignment.getId())){
+		add(new AjaxLink<Long>("viewAssignmentGradeStatistics", Model.of(assignment.getId())){
 			private static final long serialVersionUID = 1L;
 			@Override
-			public void onClick() {
-				setResponsePage(new GradebookPage());
-			}
-		});
-		
-		add(new Link<Long>("moveAssignmentLeft", Model.of(assignment.getId())){
-			private static final long serialVersionUID = 1L;
-			@Override
-			public void onClick() {
-				//given the id, get the assignment, get the sort order, then update and refresh
-				//note that we cannot use the passed in assignment sort order in here
-				//as we may have had an async reorder on the front end but not had the model data updated, 
-				//so we just make sure we get it fresh
-				
-				long assignmentId = this.getModelObject();
-
-				GradebookPage gradebookPage = (GradebookPage) this.getPage();
-				GradebookUiSettings settings = gradebookPage.getUiSettings();
-
-				if (settings == null) {
-					settings = new GradebookUiSettings();
-					gradebookPage.setUiSettings(settings);
-				}
-
-				if (settings.isCategoriesEnabled()) {
-					try {
-						int order = businessService.getCategorizedSortOrder(assignmentId);
-						businessService.updateCategorizedAssignmentOrder(assignmentId, (order - 1));
-					} catch (Exception e) {
-						e.printStackTrace();
-						error("error reordering within category");
-					}
-				} else {
-					int order = businessService.getAssignmentSortOrder(assignmentId);
-					businessService.updateAssignmentOrder(assignmentId, (order-1));
-				}
-
-				setResponsePage(new GradebookPage());
-			}
-		});
-		
-				
-		add(new Link<Long>("moveAssignmentRight", Model.of(assignment.getId())){
-			private static final long serialVersionUID = 1L;
-			@Override
-			public void onClick() {
+			public void onClick(AjaxRequestTarget target) {
 				
-				long assignmentId = this.getModelObject();
-
 				GradebookPage gradebookPage = (GradebookPage) this.getPage();
-				GradebookUiSettings settings = gradebookPage.getUiSettings();
-
-				if (settings == null) {
-					settings = new GradebookUiSettings();
-					gradebookPage.setUiSettings(settings);
-				}
-
-				if (settings.isCategoriesEnabled()) {
-					try {
-						int order = businessService.getCategorizedSortOrder(assignmentId);
-						businessService.updateCategorizedAssignmentOrder(assignmentId, (order + 1));
-					} catch (Exception e) {
-						e.printStackTrace();
-						error("error reordering within category");
-					}
-				} else {
-					int order = businessService.getAssignmentSortOrder(assignmentId);
-					businessService.updateAssignmentOrder(assignmentId, (order+1));
-				}
+				final ModalWindow window = gradebookPage.getGradeStatisticsWindow();
 				
-				
-				setResponsePage(new GradebookPage());
+				window.setContent(new AssignmentStatisticsPanel(window.getContentId(), this.getModel(), window));
+				window.show(target);
 			}
 		});
 		
+		//moving is done client side, the new order is saved in the background. See setupColumnDragAndDrop in gradebook-grades.js
+		add(new WebMarkupContainer("moveAssignmentLeft"));
+		add(new WebMarkupContainer("moveAssignmentRight"));
+		
 		
 		add(new AjaxLink<Long>("hideAssignment", Model.of(assignment.getId())){
 			private static final long serialVersionUID = 1L;
@@ -0,0 +1,142 @@
+package org.sakaiproject.gradebookng.tool.panels;
+
+import java.io.Serializable;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.wicket.AttributeModifier;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
+import org.apache.wicket.extensions.ajax.markup.html.modal.ModalWindow;
+import org.apache.wicket.markup.html.WebMarkupContainer;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
+import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.StringResourceModel;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.model.GbAssignmentStatistics;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+/**
+ * Panel for the grade statistics window
+ */
+public class AssignmentStatisticsPanel extends Panel {
+
+	private static final long serialVersionUID = 1L;
+
+	private ModalWindow window;
+
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+	protected GradebookNgBusinessService businessService;
+
+	public AssignmentStatisticsPanel(String id, IModel<Long> model, ModalWindow window) {
+		super(id, model);
+		this.window = window;
+	}
+
+	@Override
+	public void onInitialize() {
+		super.onInitialize();
+
+		final Long assignmentId = (Long) this.getDefaultModelObject();
+
+		//get the data
+		Assignment assignment = this.businessService.getAssignment(assignmentId);
+		GbAssignmentStatistics statistics = this.businessService.getAssignmentStatistics(assignmentId);
+		if(statistics == null) {
+			statistics = new GbAssignmentStatistics(0, new double[0]);
+		}
+
+		//heading
+		String name = (assignment != null) ? assignment.getName() : "";
+		add(new Label("heading", new StringResourceModel("heading.statistics", null, new Object[] {name})));
+
+		WebMarkupContainer summary = new WebMarkupContainer("summary");
+		summary.setVisible(statistics.getCount() > 0);
+		add(summary);
+
+		summary.add(new Label("count", String.valueOf(statistics.getCount())));
+		summary.add(new Label("mean", formatNumber(statistics.getMean())));
+		summary.add(new Label("median", formatNumber(statistics.getMedian())));
+		summary.add(new Label("standardDeviation", formatNumber(statistics.getStandardDeviation())));
+		summary.add(new Label("min", formatNumber(statistics.getMin())));
+		summary.add(new Label("max", formatNumber(statistics.getMax())));
+
+		//each bucket is a range of the points, the bar is sized against the largest bucket
+		List<Bucket> buckets = new ArrayList<>();
+		int[] histogram = statistics.getHistogram();
+		int largest = 0;
+		for(int count: histogram) {
+			largest = Math.max(largest, count);
+		}
+		for(int i = 0; i < histogram.length; i++) {
+			double from = statistics.getPoints() * i / GbAssignmentStatistics.BUCKETS;
+			double to = statistics.getPoints() * (i + 1) / GbAssignmentStatistics.BUCKETS;
+			int width = (largest > 0) ? Math.round(100f * histogram[i] / largest) : 0;
+			buckets.add(new Bucket(formatNumber(from) + " - " + formatNumber(to), histogram[i], width));
+		}
+
+		summary.add(new ListView<Bucket>("histogram", buckets) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void populateItem(ListItem<Bucket> item) {
+				Bucket bucket = item.getModelObject();
+				item.add(new Label("range", bucket.range));
+				item.add(new Label("bar").add(new AttributeModifier("style", "width: " + bucket.width + "%")));
+				item.add(new Label("count", String.valueOf(bucket.count)));
+			}
+		});
+
+		//no grades
+		add(new Label("empty", getString("statistics.none")).setVisible(!summary.isVisible()));
+
+		//done button
+		add(new AjaxLink<Void>("done") {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+	        public void onClick(AjaxRequestTarget target){
+	            window.close(target);
+	        }
+	    });
+	}
+
+	/**
+	 * Format a number to at most two decimal places
+	 *
+	 * @param number
+	 * @return
+	 */
+	private String formatNumber(Double number) {
+		if(number == null) {
+			return "";
+		}
+		return new DecimalFormat("0.##").format(number);
+	}
+
+	/**
+	 * A row in the histogram
+	 */
+	private static class Bucket implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String range;
+		private final int count;
+		private final int width;
+
+		Bucket(String range, int count, int width) {
+			this.range = range;
+			this.count = count;
+			this.width = width;
+		}
+	}
+
+}
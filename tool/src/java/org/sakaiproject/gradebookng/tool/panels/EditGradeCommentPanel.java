@@ -1,7 +1,6 @@
 package org.sakaiproject.gradebookng.tool.panels;
 
 import java.io.Serializable;
-import java.util.Map;
 
 import lombok.Getter;
 import lombok.Setter;
@@ -17,13 +16,13 @@ import org.apache.wicket.markup.html.form.TextArea;
 import org.apache.wicket.markup.html.panel.FeedbackPanel;
 import org.apache.wicket.markup.html.panel.Panel;
 import org.apache.wicket.model.CompoundPropertyModel;
-import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.StringResourceModel;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.apache.wicket.util.time.Duration;
 import org.apache.wicket.validation.validator.StringValidator;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.business.model.GbUser;
+import org.sakaiproject.gradebookng.tool.model.GradeCellModel;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 
 /**
@@ -43,7 +42,7 @@ public class EditGradeCommentPanel extends Panel {
 	private ModalWindow window;
 	private String comment;
 	
-	public EditGradeCommentPanel(String id, IModel<Map<String, Object>> model, ModalWindow window) {
+	public EditGradeCommentPanel(String id, GradeCellModel model, ModalWindow window) {
 		super(id, model);
 		this.window = window;
 	}
@@ -52,9 +51,9 @@ public class EditGradeCommentPanel extends Panel {
 		super.onInitialize();
 		
 		//unpack model
-		Map<String,Object> modelData = (Map<String,Object>) this.getDefaultModelObject();
-		final Long assignmentId = (Long) modelData.get("assignmentId");
-		final String studentUuid = (String) modelData.get("studentUuid");
+		GradeCellModel model = (GradeCellModel) this.getDefaultModel();
+		final Long assignmentId = model.getAssignmentId();
+		final String studentUuid = model.getStudentUuid();
 		
 		//fetch current comment
 		this.comment = this.businessService.getAssignmentGradeComment(assignmentId, studentUuid);
@@ -1,10 +1,11 @@
 package org.sakaiproject.gradebookng.tool.panels;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.math.NumberUtils;
 import org.apache.commons.validator.routines.DoubleValidator;
@@ -14,7 +15,6 @@ import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.attributes.AjaxCallListener;
 import org.apache.wicket.ajax.attributes.AjaxRequestAttributes;
 import org.apache.wicket.ajax.markup.html.AjaxLink;
-import org.apache.wicket.core.util.string.ComponentRenderer;
 import org.apache.wicket.extensions.ajax.markup.html.AjaxEditableLabel;
 import org.apache.wicket.extensions.ajax.markup.html.modal.ModalWindow;
 import org.apache.wicket.markup.html.basic.Label;
@@ -26,6 +26,7 @@ import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.sakaiproject.gradebookng.business.GradeSaveResponse;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
+import org.sakaiproject.gradebookng.tool.model.GradeCellModel;
 import org.sakaiproject.gradebookng.tool.pages.GradebookPage;
 
 /**
@@ -41,12 +42,11 @@ public class GradeItemCellPanel extends Panel {
 	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
 	protected GradebookNgBusinessService businessService;
 		
-	IModel<Map<String,Object>> model;
-	Map<String,Object> modelData;
+	GradeCellModel model;
 	
 	AjaxEditableLabel<String> gradeCell;
 	
-	String comment;
+	boolean hasComment;
 	GradeCellSaveStyle gradeSaveStyle;
 	
 	final List<GradeCellNotification> notifications = new ArrayList<GradeCellNotification>();
@@ -70,7 +70,7 @@ public class GradeItemCellPanel extends Panel {
 
 		}
 	
-	public GradeItemCellPanel(String id, IModel<Map<String,Object>> model) {
+	public GradeItemCellPanel(String id, GradeCellModel model) {
 		super(id, model);
 		this.model = model;
 	}
@@ -80,29 +80,27 @@ public class GradeItemCellPanel extends Panel {
 		super.onInitialize();
 		
 		//unpack model
-		modelData = (Map<String,Object>) this.model.getObject();
-		final Long assignmentId = (Long) modelData.get("assignmentId");
-		final Double assignmentPoints = (Double) modelData.get("assignmentPoints");
-		final String studentUuid = (String) modelData.get("studentUuid");
-		final Boolean isExternal = (Boolean) modelData.get("isExternal");
-		final GbGradeInfo gradeInfo = (GbGradeInfo) modelData.get("gradeInfo");
+		final Long assignmentId = this.model.getAssignmentId();
+		final Double assignmentPoints = this.model.getAssignmentPoints();
+		final String studentUuid = this.model.getStudentUuid();
+		final boolean isExternal = this.model.isExternal();
+		final GbGradeInfo gradeInfo = this.model.getObject();
 		
 		//note, gradeInfo may be null
 		String rawGrade;
 		
 		if(gradeInfo != null) {
 			rawGrade = gradeInfo.getGrade();
-			this.comment = gradeInfo.getGradeComment();
+			this.hasComment = gradeInfo.hasComment();
 		} else {
 			rawGrade = "";
-			this.comment = "";
 		}
 		
 		//get grade
 		final String formattedGrade = this.formatGrade(rawGrade);
 				
 		//if assignment is external, normal label
-		if(BooleanUtils.isTrue(isExternal)){
+		if(isExternal){
 			add(new Label("grade", Model.of(formattedGrade)));
 			getParent().add(new AttributeModifier("class", "gb-external-item-cell"));
 			notifications.add(GradeCellNotification.IS_EXTERNAL);
@@ -132,7 +130,7 @@ public class GradeItemCellPanel extends Panel {
 					}
 					
 					//check if we have a comment and mark the cell with the comment icon
-					if(StringUtils.isNotBlank(comment)) {
+					if(hasComment) {
 						markHasComment(this);
 					}
 				}
@@ -157,8 +155,9 @@ public class GradeItemCellPanel extends Panel {
 						//TODO add the message
 					} else {
 						
+						//only the grade is saved, so the comment stays as it is without having to be fetched for the cell
 						//for concurrency, get the original grade we have in the UI and pass it into the service as a check
-						GradeSaveResponse result = businessService.saveGrade(assignmentId, studentUuid, this.originalGrade, newGrade, comment);
+						GradeSaveResponse result = businessService.saveGradeOnly(assignmentId, studentUuid, this.originalGrade, newGrade);
 						
 						//TODO here, add the message
 						switch (result) {
@@ -286,7 +285,7 @@ public class GradeItemCellPanel extends Panel {
 		//menu
 		
 		//grade log
-		add(new AjaxLink<Map<String,Object>>("viewGradeLog", model){
+		add(new AjaxLink<GbGradeInfo>("viewGradeLog", model){
 			private static final long serialVersionUID = 1L;
 			@Override
 			public void onClick(AjaxRequestTarget target) {
@@ -294,14 +293,14 @@ public class GradeItemCellPanel extends Panel {
 				GradebookPage gradebookPage = (GradebookPage) this.getPage();
 				final ModalWindow window = gradebookPage.getGradeLogWindow();
 				
-				window.setContent(new GradeLogPanel(window.getContentId(), this.getModel(), window));
+				window.setContent(new GradeLogPanel(window.getContentId(), model, window));
 				window.show(target);
 				
 			}
 		});
 		
 		//grade comment
-		AjaxLink<Map<String,Object>> editGradeComment = new AjaxLink<Map<String,Object>>("editGradeComment", model){
+		AjaxLink<GbGradeInfo> editGradeComment = new AjaxLink<GbGradeInfo>("editGradeComment", model){
 			private static final long serialVersionUID = 1L;
 			@Override
 			public void onClick(AjaxRequestTarget target) {
@@ -309,7 +308,7 @@ public class GradeItemCellPanel extends Panel {
 				GradebookPage gradebookPage = (GradebookPage) this.getPage();
 				final ModalWindow window = gradebookPage.getGradeCommentWindow();
 				
-				final EditGradeCommentPanel panel = new EditGradeCommentPanel(window.getContentId(), this.getModel(), window);
+				final EditGradeCommentPanel panel = new EditGradeCommentPanel(window.getContentId(), model, window);
 				window.setContent(panel);
 				window.showUnloadConfirmation(false);
 				window.setWindowClosedCallback(new ModalWindow.WindowClosedCallback() {
@@ -317,9 +316,9 @@ public class GradeItemCellPanel extends Panel {
 
 					@Override
 					public void onClose(AjaxRequestTarget target) {
-						comment = panel.getComment();
+						hasComment = StringUtils.isNotBlank(panel.getComment());
 						
-						if(StringUtils.isNotBlank(comment)) {
+						if(hasComment) {
 							markHasComment(gradeCell);
 							target.add(getParentCellFor(gradeCell));
 							target.appendJavaScript("sakai.gradebookng.spreadsheet.setupCell('" + getParentCellFor(gradeCell).getMarkupId() + "','" + assignmentId + "', '" + studentUuid + "');");
@@ -339,7 +338,7 @@ public class GradeItemCellPanel extends Panel {
 
 			@Override
 			public String getObject() {
-				if(StringUtils.isNotBlank(comment)){
+				if(hasComment){
 					return getString("comment.option.edit");
 				} else {
 					return getString("comment.option.add");
@@ -405,7 +404,7 @@ public class GradeItemCellPanel extends Panel {
 		if(this.gradeSaveStyle != null) {
 			cssClasses.add(gradeSaveStyle.getCss()); //the particular style for this cell that has been computed previously
 		}
-		if(StringUtils.isNotBlank(this.comment)) {
+		if(this.hasComment) {
 			cssClasses.add("has-comment"); //if comments
 		}
 		
@@ -446,19 +445,23 @@ public class GradeItemCellPanel extends Panel {
 	}
 	
 	
+	/**
+	 * Flag the notifications on the cell. The popover itself is built on the client from the page's {@link GradeItemCellPopoverPanel}
+	 * template, so nothing is rendered here.
+	 */
 	private void refreshPopoverNotifications() {
 		if (!notifications.isEmpty()) {
-			modelData.put("comment", comment);
-
-			GradeItemCellPopoverPanel popover = new GradeItemCellPopoverPanel("popover", Model.ofMap(modelData), notifications);
-			String popoverString = ComponentRenderer.renderComponent(popover).toString();
+			Set<String> flags = new LinkedHashSet<>();
+			for(GradeCellNotification notification: notifications) {
+				flags.add(notification.name());
+			}
 
 			getParent().add(new AttributeModifier("data-toggle", "popover"));
 			getParent().add(new AttributeModifier("data-trigger", "manual"));
 			getParent().add(new AttributeModifier("data-placement", "bottom"));
 			getParent().add(new AttributeModifier("data-html", "true"));
 			getParent().add(new AttributeModifier("data-container", "#gradebookGrades"));
-			getParent().add(new AttributeModifier("data-content", popoverString));
+			getParent().add(new AttributeModifier("data-notifications", StringUtils.join(flags, " ")));
 		}
 	}
 }
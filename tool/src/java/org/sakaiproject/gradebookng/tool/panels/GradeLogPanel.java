@@ -1,7 +1,9 @@
 package org.sakaiproject.gradebookng.tool.panels;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -9,17 +11,20 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.wicket.ajax.AjaxRequestTarget;
 import org.apache.wicket.ajax.markup.html.AjaxLink;
 import org.apache.wicket.extensions.ajax.markup.html.modal.ModalWindow;
+import org.apache.wicket.markup.html.WebMarkupContainer;
 import org.apache.wicket.markup.html.basic.Label;
 import org.apache.wicket.markup.html.list.ListItem;
 import org.apache.wicket.markup.html.list.ListView;
 import org.apache.wicket.markup.html.panel.Panel;
-import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.AbstractReadOnlyModel;
 import org.apache.wicket.model.ResourceModel;
 import org.apache.wicket.model.StringResourceModel;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.business.model.GbGradeLog;
+import org.sakaiproject.gradebookng.business.model.GbGradeLogPage;
 import org.sakaiproject.gradebookng.business.model.GbUser;
+import org.sakaiproject.gradebookng.tool.model.GradeCellModel;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 
 /**
@@ -33,10 +38,18 @@ public class GradeLogPanel extends Panel {
 	
 	private ModalWindow window;
 	
+	//number of entries loaded at a time
+	private static final int PAGE_SIZE = 20;
+	
+	//the entries loaded so far, newest first, and the graders of them
+	private final List<GbGradeLog> entries = new ArrayList<>();
+	private final Map<String, GbUser> graders = new HashMap<>();
+	private Integer nextCursor;
+	
 	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
 	protected GradebookNgBusinessService businessService;
 	
-	public GradeLogPanel(String id, IModel<Map<String,Object>> model, ModalWindow window) {
+	public GradeLogPanel(String id, GradeCellModel model, ModalWindow window) {
 		super(id, model);
 		this.window = window;
 	}
@@ -46,15 +59,26 @@ public class GradeLogPanel extends Panel {
 		super.onInitialize();
 		
 		//unpack model
-		Map<String,Object> modelData = (Map<String,Object>) this.getDefaultModelObject();
-		final Long assignmentId = (Long) modelData.get("assignmentId");
-		final String studentUuid = (String) modelData.get("studentUuid");
+		GradeCellModel model = (GradeCellModel) this.getDefaultModel();
+		final Long assignmentId = model.getAssignmentId();
+		final String studentUuid = model.getStudentUuid();
+		
+		//get the first page of data
+		loadPage(studentUuid, assignmentId);
 		
-		//get the data
-		final List<GbGradeLog> gradeLog = businessService.getGradeLog(studentUuid, assignmentId);
+		final WebMarkupContainer logWrap = new WebMarkupContainer("logWrap");
+		logWrap.setOutputMarkupId(true);
+		add(logWrap);
 		
 		//render list        
-        ListView<GbGradeLog> listView = new ListView<GbGradeLog>("log", gradeLog) {
+        ListView<GbGradeLog> listView = new ListView<GbGradeLog>("log", new AbstractReadOnlyModel<List<GbGradeLog>>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public List<GbGradeLog> getObject() {
+				return GradeLogPanel.this.entries;
+			}
+        }) {
 
 			private static final long serialVersionUID = 1L;
 
@@ -66,7 +90,7 @@ public class GradeLogPanel extends Panel {
 				String logDate = formatDate(gradeLog.getDateGraded());
 				String grade = formatGrade(gradeLog.getGrade());
 				
-				GbUser grader = businessService.getUser(gradeLog.getGraderUuid());
+				GbUser grader = GradeLogPanel.this.graders.get(gradeLog.getGraderUuid());
 		        String graderDisplayId = (grader != null) ? grader.getDisplayId() : getString("unknown.user.id");
 
 		        //add the entry
@@ -74,12 +98,29 @@ public class GradeLogPanel extends Panel {
 				
 			}
         }; 
-        add(listView);
+        logWrap.add(listView);
+        
+        //older entries
+        logWrap.add(new AjaxLink<Void>("more") {
+        	
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void onClick(AjaxRequestTarget target) {
+				loadPage(studentUuid, assignmentId);
+				target.add(logWrap);
+			}
+			
+			@Override
+			public boolean isVisible() {
+				return GradeLogPanel.this.nextCursor != null;
+			}
+        });
         
         //no entries
         Label emptyLabel = new Label("empty", new ResourceModel("grade.log.none"));
-        emptyLabel.setVisible(gradeLog.isEmpty());
-        add(emptyLabel);
+        emptyLabel.setVisible(this.entries.isEmpty());
+        logWrap.add(emptyLabel);
         
         //done button
         add(new AjaxLink<Void>("done") {
@@ -99,6 +140,19 @@ public class GradeLogPanel extends Panel {
       		
 	}
 	
+	/**
+	 * Load the next page of the log
+	 * 
+	 * @param studentUuid
+	 * @param assignmentId
+	 */
+	private void loadPage(String studentUuid, Long assignmentId) {
+		GbGradeLogPage page = businessService.getGradeLog(studentUuid, assignmentId, this.nextCursor, PAGE_SIZE);
+		this.entries.addAll(page.getEntries());
+		this.graders.putAll(page.getGraders());
+		this.nextCursor = page.getNextCursor();
+	}
+	
 	/**
 	 * Format a date
 	 * 
@@ -1,7 +1,6 @@
 package org.sakaiproject.gradebookng.tool.panels;
 
 import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -55,12 +54,12 @@ public class StudentGradeSummaryPanel extends Panel {
 		String userId = (String) modelData.get("userId");
 		String displayName = (String) modelData.get("displayName");
 		
-		//build the grade matrix for the user
+		//get the grades for the user
         final List<Assignment> assignments = this.businessService.getGradebookAssignments();
         
-		//TODO catch if this is null, the get(0) will throw an exception
-        //TODO also catch the GbException
-        this.gradeInfo = this.businessService.buildGradeMatrix(assignments, Collections.singletonList(userId)).get(0);
+        //TODO catch the GbException
+        //note, this may be null if the user can't be found
+        this.gradeInfo = this.businessService.buildStudentSummary(assignments, userId);
 		
 		//assignment list
 		ListDataProvider<Assignment> listDataProvider = new ListDataProvider<Assignment>(assignments);
@@ -74,7 +73,8 @@ public class StudentGradeSummaryPanel extends Panel {
         		Assignment assignment = item.getModelObject(); 
 	    		RepeatingView repeatingView = new RepeatingView("dataRow");
 	
-	    		GbGradeInfo gradeInfo = StudentGradeSummaryPanel.this.gradeInfo.getGrades().get(assignment.getId());
+	    		GbStudentGradeInfo studentGradeInfo = StudentGradeSummaryPanel.this.gradeInfo;
+	    		GbGradeInfo gradeInfo = (studentGradeInfo != null) ? studentGradeInfo.getGrades().get(assignment.getId()) : null;
 	    		//TODO exception handling in here
 	    		
 	    		//note, gradeInfo may be null
@@ -116,7 +116,7 @@ public class StudentGradeSummaryPanel extends Panel {
       		
       		
       //course grade
-      add(new Label("courseGrade", this.gradeInfo.getCourseGrade()));
+      add(new Label("courseGrade", (this.gradeInfo != null) ? this.gradeInfo.getCourseGrade() : null));
        		
 	}
 	
@@ -40,6 +40,7 @@ public class StudentNameCellPanel extends Panel {
 		String eid = (String) modelData.get("eid");
 		String firstName = (String) modelData.get("firstName");
 		String lastName = (String) modelData.get("lastName");
+		String displayName = (String) modelData.get("displayName");
 		GbStudentSortType sortType = (GbStudentSortType) modelData.get("sortType");
 		
 		
@@ -60,7 +61,7 @@ public class StudentNameCellPanel extends Panel {
 		};
 		
 		//name label
-		link.add(new Label("name", getFormattedStudentName(firstName, lastName, sortType)));
+		link.add(new Label("name", getFormattedStudentName(firstName, lastName, displayName, sortType)));
 		
 		//eid label, configurable
 		link.add(new Label("eid", eid){
@@ -86,13 +87,15 @@ public class StudentNameCellPanel extends Panel {
 	 * 
 	 * Sorted by Last Name = Smith, John (jsmith26)
    	 * Sorted by First Name = John Smith (jsmith26)
+   	 * Sorted by Display Name = John Smith (jsmith26), or however the display name is set up
    	 * 
 	 * @param firstName
 	 * @param lastName
+	 * @param displayName
 	 * @param sortType
 	 * @return
 	 */
-	private String getFormattedStudentName(String firstName, String lastName, GbStudentSortType sortType) {
+	private String getFormattedStudentName(String firstName, String lastName, String displayName, GbStudentSortType sortType) {
 		
 		String msg = "formatter.studentname." + sortType.name();
 		if(GbStudentSortType.LAST_NAME == sortType) {
@@ -101,6 +104,9 @@ public class StudentNameCellPanel extends Panel {
 		if(GbStudentSortType.FIRST_NAME == sortType) {
 			return String.format(getString(msg), firstName, lastName);
 		}
+		if(GbStudentSortType.DISPLAY_NAME == sortType) {
+			return String.format(getString(msg), displayName);
+		}
 		return firstName;
 	}
 	
@@ -1,20 +1,21 @@
 package org.sakaiproject.gradebookng.tool.panels;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import org.apache.wicket.ajax.AjaxRequestTarget;
-import org.apache.wicket.ajax.form.AjaxFormComponentUpdatingBehavior;
 import org.apache.wicket.markup.html.basic.Label;
-import org.apache.wicket.markup.html.form.Form;
-import org.apache.wicket.markup.html.form.TextField;
+import org.apache.wicket.markup.html.link.Link;
+import org.apache.wicket.markup.html.list.ListItem;
+import org.apache.wicket.markup.html.list.ListView;
 import org.apache.wicket.markup.html.panel.Panel;
-import org.apache.wicket.model.CompoundPropertyModel;
+import org.apache.wicket.model.Model;
 import org.apache.wicket.model.ResourceModel;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.business.model.GbStudentSortType;
-import org.sakaiproject.gradebookng.tool.model.StringModel;
+import org.sakaiproject.gradebookng.tool.model.GradebookUiSettings;
+import org.sakaiproject.gradebookng.tool.pages.GradebookPage;
 
 /**
  * 
@@ -36,9 +37,39 @@ public class StudentNameColumnHeaderPanel extends Panel {
 		//title
 		add(new Label("title", new ResourceModel("column.header.students")));
 		
-		//get list of sort orders
-		List<GbStudentSortType> sortOrders = Arrays.asList(GbStudentSortType.values());
+		//get list of sort orders, other than the current one
+		List<GbStudentSortType> sortOrders = new ArrayList<>(Arrays.asList(GbStudentSortType.values()));
+		sortOrders.remove(currentSortOrder);
 		
-		//TODO use the list to render the dropdown, changing the text as appropriate
+		add(new ListView<GbStudentSortType>("sortOrders", sortOrders) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void populateItem(ListItem<GbStudentSortType> item) {
+				
+				Link<GbStudentSortType> link = new Link<GbStudentSortType>("sortLink", Model.of(item.getModelObject())) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public void onClick() {
+						GradebookPage gradebookPage = (GradebookPage) this.getPage();
+						GradebookUiSettings settings = gradebookPage.getUiSettings();
+						if(settings == null) {
+							settings = new GradebookUiSettings();
+						}
+						
+						//sorting by name replaces any sort by grade
+						settings.setStudentSortOrder(this.getModelObject());
+						settings.setAssignmentSortOrder(null);
+						gradebookPage.setUiSettings(settings);
+						
+						//the names are formatted differently for each sort so the page is rebuilt
+						setResponsePage(new GradebookPage());
+					}
+				};
+				link.add(new Label("label", new ResourceModel("sortbyname.option." + item.getModelObject().name())));
+				item.add(link);
+			}
+		});
 	}
 }
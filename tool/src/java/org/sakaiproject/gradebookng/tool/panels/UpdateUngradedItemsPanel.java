@@ -30,6 +30,7 @@ import org.apache.wicket.markup.repeater.data.ListDataProvider;
 import org.apache.wicket.model.CompoundPropertyModel;
 import org.apache.wicket.model.IModel;
 import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.gradebookng.business.GradebookNgAnalyticsService;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
@@ -49,6 +50,9 @@ public class UpdateUngradedItemsPanel extends Panel {
 	
 	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
 	protected GradebookNgBusinessService businessService;
+	
+	@SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgAnalyticsService")
+	protected GradebookNgAnalyticsService analyticsService;
 		
 	private ModalWindow window;
 	
@@ -87,6 +91,9 @@ public class UpdateUngradedItemsPanel extends Panel {
 				boolean success = businessService.updateUngradedItems(assignmentId, override.getGrade());
 				
 				if(success) {
+					//this can fill a lot of cells at once, so have the analytics ready for the next dashboard load
+					analyticsService.refresh(businessService.getCurrentSiteId());
+					
 					window.close(target);
 					setResponsePage(new GradebookPage());
 				} else {
@@ -0,0 +1,114 @@
+package org.sakaiproject.gradebookng.tool.panels.importExport;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.wicket.injection.Injector;
+import org.apache.wicket.request.resource.AbstractResource;
+import org.apache.wicket.request.resource.ContentDisposition;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.apache.wicket.util.time.Duration;
+import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.helpers.ExportGradesHelper;
+import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
+import org.sakaiproject.service.gradebook.shared.Assignment;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the gradebook export straight to the response. Grades are read a chunk of students at a time and each row is
+ * written as it is read, so the download starts straight away and nothing is buffered on disk.
+ *
+ * CSV responses are gzipped if the browser accepts it. XLSX is already compressed.
+ */
+public class GradeExportResource extends AbstractResource {
+
+    private static final long serialVersionUID = 1L;
+
+    //number of students to load grades for at a time
+    private static final int CHUNK_SIZE = 200;
+
+    @SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
+    protected GradebookNgBusinessService businessService;
+
+    public enum Format {
+        CSV("text/csv; charset=" + ExportGradesHelper.CSV_CHARSET.name(), "gradebookExport.csv"),
+        XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", "gradebookExport.xlsx");
+
+        private final String contentType;
+        private final String fileName;
+
+        Format(String contentType, String fileName) {
+            this.contentType = contentType;
+            this.fileName = fileName;
+        }
+    }
+
+    private final boolean includeGrades;
+    private final Format format;
+
+    /**
+     * @param includeGrades whether to export the grades, or just the roster as a template
+     * @param format the file format
+     */
+    public GradeExportResource(boolean includeGrades, Format format) {
+        Injector.get().inject(this);
+        this.includeGrades = includeGrades;
+        this.format = format;
+    }
+
+    @Override
+    protected ResourceResponse newResourceResponse(Attributes attributes) {
+
+        final boolean gzip = this.format == Format.CSV && acceptsGzip(attributes);
+
+        ResourceResponse response = new ResourceResponse();
+        response.setContentType(this.format.contentType);
+        //TODO - add the site name to the file?
+        response.setFileName(this.format.fileName);
+        response.setContentDisposition(ContentDisposition.ATTACHMENT);
+        response.setCacheDuration(Duration.NONE);
+        if (gzip) {
+            response.getHeaders().addHeader("Content-Encoding", "gzip");
+        }
+
+        response.setWriteCallback(new WriteCallback() {
+            @Override
+            public void writeData(Attributes attributes) throws IOException {
+                List<Assignment> assignments = businessService.getGradebookAssignments();
+                if (assignments == null) {
+                    assignments = Collections.emptyList();
+                }
+
+                //the template only needs the roster, so don't load any grades for it
+                Iterator<GbStudentGradeInfo> students = businessService.iterateGradeMatrix(
+                        includeGrades ? assignments : Collections.<Assignment>emptyList(), CHUNK_SIZE);
+
+                OutputStream out = attributes.getResponse().getOutputStream();
+                if (format == Format.XLSX) {
+                    ExportGradesHelper.writeXlsx(out, assignments, students, includeGrades);
+                } else if (gzip) {
+                    GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+                    ExportGradesHelper.writeCsv(gzipOut, assignments, students, includeGrades);
+                    gzipOut.finish();
+                } else {
+                    ExportGradesHelper.writeCsv(out, assignments, students, includeGrades);
+                }
+            }
+        });
+
+        return response;
+    }
+
+    private boolean acceptsGzip(Attributes attributes) {
+        Object request = attributes.getRequest().getContainerRequest();
+        if (request instanceof HttpServletRequest) {
+            return StringUtils.contains(((HttpServletRequest) request).getHeader("Accept-Encoding"), "gzip");
+        }
+        return false;
+    }
+}
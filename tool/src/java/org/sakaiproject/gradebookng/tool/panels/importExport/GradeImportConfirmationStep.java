@@ -1,6 +1,5 @@
 package org.sakaiproject.gradebookng.tool.panels.importExport;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.wicket.Component;
 import org.apache.wicket.behavior.Behavior;
@@ -15,12 +14,11 @@ import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.Model;
 import org.apache.wicket.model.PropertyModel;
 import org.apache.wicket.spring.injection.annot.SpringBean;
-import org.sakaiproject.gradebookng.business.GradeSaveResponse;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
+import org.sakaiproject.gradebookng.business.GradebookNgImportService;
+import org.sakaiproject.gradebookng.business.model.GbImportJob;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItem;
-import org.sakaiproject.gradebookng.business.model.ProcessedGradeItemDetail;
 import org.sakaiproject.gradebookng.tool.model.ImportWizardModel;
-import org.sakaiproject.gradebookng.tool.pages.GradebookPage;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 
 import java.util.ArrayList;
@@ -36,6 +34,9 @@ public class GradeImportConfirmationStep extends Panel {
     @SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
     protected GradebookNgBusinessService businessService;
 
+    @SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgImportService")
+    protected GradebookNgImportService importService;
+
     private String panelId;
     private IModel<ImportWizardModel> model;
 
@@ -61,53 +62,20 @@ public class GradeImportConfirmationStep extends Panel {
             @Override
             protected void onSubmit()
             {
-                boolean errors = false;
-                //Create new GB items
-                for (Assignment assignment : assignmentsToCreate) {
-                    businessService.addAssignment(assignment);
-                }
+                //the import runs in the background, this panel is replaced by one that tracks its progress
+                GbImportJob job = importService.submit(businessService.getCurrentSiteId(), assignmentsToCreate, itemsToSave());
+                LOG.debug("Submitted import job " + job.getJobId());
 
+                Component newPanel = new GradeImportProgressStep(panelId, job.getJobId());
+                newPanel.setOutputMarkupId(true);
+                GradeImportConfirmationStep.this.replaceWith(newPanel);
+            }
+
+            private List<ProcessedGradeItem> itemsToSave() {
                 List<ProcessedGradeItem> itemsToSave = new ArrayList<ProcessedGradeItem>();
                 itemsToSave.addAll(itemsToUpdate);
                 itemsToSave.addAll(itemsToCreate);
-                for (ProcessedGradeItem processedGradeItem : itemsToSave) {
-                    LOG.debug("Looping through items to save");
-                    for (ProcessedGradeItemDetail processedGradeItemDetail : processedGradeItem.getProcessedGradeItemDetails()) {
-                        LOG.debug("Looping through detail items to save");
-                        GradeSaveResponse saved = businessService.saveGrade(processedGradeItem.getItemId(), processedGradeItemDetail.getStudentUuid(),
-                                processedGradeItemDetail.getGrade(), processedGradeItemDetail.getComment());
-
-                        if (saved == GradeSaveResponse.NO_CHANGE) {
-                            //Check for changed comments
-                            String currentComment = businessService.getAssignmentGradeComment(processedGradeItem.getItemId(),
-                                    processedGradeItemDetail.getStudentUuid());
-
-                            currentComment = StringUtils.trimToNull(currentComment);
-                            String newComment = StringUtils.trimToNull(processedGradeItemDetail.getComment());
-                            if (!StringUtils.equals(currentComment, newComment)) {
-                                boolean success = businessService.updateAssignmentGradeComment(processedGradeItem.getItemId(),
-                                        processedGradeItemDetail.getStudentUuid(), newComment);
-                                LOG.info("Saving comment: " + success + ", " + processedGradeItem.getItemId() + ", " + processedGradeItemDetail.getStudentEid() + ", " +
-                                        processedGradeItemDetail.getComment());
-                                if (!success) {
-                                    errors = true;
-                                }
-                            }
-                        } else if (saved != GradeSaveResponse.OK) {
-                            //Anything other than OK is bad
-                            errors = true;
-                        }
-                        LOG.info("Saving grade: " + saved + ", " + processedGradeItem.getItemId() + ", " + processedGradeItemDetail.getStudentEid() + ", " +
-                                processedGradeItemDetail.getGrade() + ", " + processedGradeItemDetail.getComment());
-                    }
-                }
-
-                if (!errors) {
-                    getSession().info(getString("importExport.confirmation.success"));
-                    setResponsePage(new GradebookPage());
-                } else {
-                    getSession().error(getString("importExport.confirmation.failure"));
-                }
+                return itemsToSave;
             }
         };
         add(form);
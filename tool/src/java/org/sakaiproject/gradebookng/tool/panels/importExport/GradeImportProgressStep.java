@@ -0,0 +1,100 @@
+package org.sakaiproject.gradebookng.tool.panels.importExport;
+
+import org.apache.log4j.Logger;
+import org.apache.wicket.ajax.AbstractAjaxTimerBehavior;
+import org.apache.wicket.ajax.AjaxRequestTarget;
+import org.apache.wicket.ajax.markup.html.AjaxLink;
+import org.apache.wicket.markup.html.basic.Label;
+import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.model.AbstractReadOnlyModel;
+import org.apache.wicket.model.StringResourceModel;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.apache.wicket.util.time.Duration;
+import org.sakaiproject.gradebookng.business.GradebookNgImportService;
+import org.sakaiproject.gradebookng.business.model.GbImportJob;
+import org.sakaiproject.gradebookng.tool.pages.GradebookPage;
+
+/**
+ * Final step of the import wizard. The import runs as a background job and this polls it until it finishes.
+ */
+public class GradeImportProgressStep extends Panel {
+
+    private static final Logger LOG = Logger.getLogger(GradeImportProgressStep.class);
+
+    @SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgImportService")
+    protected GradebookNgImportService importService;
+
+    //only the id is held, the job is looked up each time it is needed
+    private final String jobId;
+
+    public GradeImportProgressStep(String id, String jobId) {
+        super(id);
+        this.jobId = jobId;
+    }
+
+    @Override
+    public void onInitialize() {
+        super.onInitialize();
+
+        final Label progress = new Label("progress", new AbstractReadOnlyModel<String>() {
+            @Override
+            public String getObject() {
+                GbImportJob job = getJob();
+                if (job == null) {
+                    return getString("importExport.progress.missing");
+                }
+                String status = new StringResourceModel("importExport.progress.status", GradeImportProgressStep.this, null,
+                        job.getRowsProcessed(), job.getTotalRows(), job.getErrors()).getString();
+                if (job.getStatus() == GbImportJob.Status.FAILED || (job.isFinished() && job.getErrors() > 0)) {
+                    status += " " + getString("importExport.confirmation.failure");
+                }
+                return status;
+            }
+        });
+        progress.setOutputMarkupId(true);
+        add(progress);
+
+        final AbstractAjaxTimerBehavior timer = new AbstractAjaxTimerBehavior(Duration.seconds(2)) {
+            @Override
+            protected void onTimer(AjaxRequestTarget target) {
+                GbImportJob job = getJob();
+
+                if (job != null && job.getStatus() == GbImportJob.Status.COMPLETE && job.getErrors() == 0) {
+                    getSession().info(getString("importExport.confirmation.success"));
+                    setResponsePage(new GradebookPage());
+                    return;
+                }
+
+                if (job == null || job.isFinished()) {
+                    stop(target);
+                }
+                target.add(GradeImportProgressStep.this);
+            }
+        };
+        add(timer);
+        setOutputMarkupId(true);
+
+        final AjaxLink<Void> resume = new AjaxLink<Void>("resume") {
+            @Override
+            public void onClick(AjaxRequestTarget target) {
+                LOG.debug("Resuming import job " + jobId);
+                if (importService.resume(jobId)) {
+                    timer.restart(target);
+                }
+                target.add(GradeImportProgressStep.this);
+            }
+
+            @Override
+            public boolean isVisible() {
+                GbImportJob job = getJob();
+                return job != null && job.getStatus() == GbImportJob.Status.FAILED;
+            }
+        };
+        add(resume);
+
+    }
+
+    private GbImportJob getJob() {
+        return this.importService.getJob(this.jobId);
+    }
+}
@@ -1,39 +1,37 @@
 package org.sakaiproject.gradebookng.tool.panels.importExport;
 
-import au.com.bytecode.opencsv.CSVWriter;
 import org.apache.commons.lang.ArrayUtils;
-import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.wicket.Component;
 import org.apache.wicket.markup.html.form.Button;
 import org.apache.wicket.markup.html.form.Form;
 import org.apache.wicket.markup.html.form.upload.FileUpload;
 import org.apache.wicket.markup.html.form.upload.FileUploadField;
-import org.apache.wicket.markup.html.link.DownloadLink;
+import org.apache.wicket.markup.html.link.ResourceLink;
 import org.apache.wicket.markup.html.panel.Panel;
+import org.apache.wicket.model.IModel;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.apache.wicket.model.Model;
+import org.apache.wicket.model.StringResourceModel;
 import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.apache.wicket.util.lang.Bytes;
-import org.apache.wicket.util.time.Duration;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.business.helpers.ImportGradesHelper;
-import org.sakaiproject.gradebookng.business.model.GbGradeInfo;
 import org.sakaiproject.gradebookng.business.model.GbStudentGradeInfo;
+import org.sakaiproject.gradebookng.business.model.ImportColumn;
+import org.sakaiproject.gradebookng.business.model.ImportedGrade;
 import org.sakaiproject.gradebookng.business.model.ImportedGradeWrapper;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItem;
 import org.sakaiproject.gradebookng.tool.model.ImportWizardModel;
 import org.sakaiproject.gradebookng.tool.pages.GradebookPage;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by chmaurer on 1/22/15.
@@ -47,8 +45,14 @@ public class GradeImportUploadStep extends Panel {
     private static final String[] CSV_MIME_TYPES={"text/csv"};
 
     private String panelId;
-    private List<Assignment> assignments;
-    private List<GbStudentGradeInfo> grades;
+
+    //only loaded when a file is uploaded, and not kept in the page between requests
+    private final IModel<List<Assignment>> assignmentsModel = new LoadableDetachableModel<List<Assignment>>() {
+        @Override
+        protected List<Assignment> load() {
+            return businessService.getGradebookAssignments();
+        }
+    };
 
     @SpringBean(name="org.sakaiproject.gradebookng.business.GradebookNgBusinessService")
     protected GradebookNgBusinessService businessService;
@@ -62,73 +66,17 @@ public class GradeImportUploadStep extends Panel {
     public void onInitialize() {
         super.onInitialize();
 
-        //get list of assignments. this allows us to build the columns and then fetch the grades for each student for each assignment from the map
-        assignments = businessService.getGradebookAssignments();
-
-        //get the grade matrix
-        grades = businessService.buildGradeMatrix(assignments);
-
-        add(new DownloadLink("downloadFullGradebook", new LoadableDetachableModel<File>() {
-
-            @Override
-            protected File load() {
-                return buildFile(true);
-
-            }
-        }).setCacheDuration(Duration.NONE).setDeleteAfterDownload(true));
-
+        //nothing is loaded to render the page, the downloads stream their own data when clicked
+        add(new ResourceLink<Void>("downloadFullGradebook", new GradeExportResource(true, GradeExportResource.Format.CSV)));
+        add(new ResourceLink<Void>("downloadFullGradebookXlsx", new GradeExportResource(true, GradeExportResource.Format.XLSX)));
 
         add(new UploadForm("form"));
     }
 
-    private File buildFile(boolean includeGrades) {
-        File tempFile;
-        try {
-            //TODO - add the site name to the file?
-            tempFile = File.createTempFile("gradebookTemplate", ".csv");
-            FileWriter fw = new FileWriter(tempFile);
-            CSVWriter csvWriter = new CSVWriter(fw);
-
-            //Create csv header
-            List<String> header = new ArrayList<String>();
-            header.add("Student ID");
-            header.add("Student Name");
-
-            for (Assignment assignment : assignments) {
-                String assignmentPoints = assignment.getPoints().toString();
-                header.add(assignment.getName() + " [" + StringUtils.removeEnd(assignmentPoints, ".0") + "]");
-                header.add("*/ " + assignment.getName() + " Comments */");
-            }
-
-            csvWriter.writeNext(header.toArray(new String[]{}));
-
-            for (GbStudentGradeInfo studentGradeInfo : grades) {
-                List<String> line = new ArrayList<String>();
-                line.add(studentGradeInfo.getStudentEid());
-                line.add(studentGradeInfo.getStudentLastName() + ", " + studentGradeInfo.getStudentFirstName());
-                if (includeGrades) {
-                    for (Assignment assignment : assignments) {
-                        GbGradeInfo gradeInfo = studentGradeInfo.getGrades().get(assignment.getId());
-                        if (gradeInfo != null) {
-                            line.add(StringUtils.removeEnd(gradeInfo.getGrade(), ".0"));
-                            line.add(gradeInfo.getGradeComment());
-                        } else {
-                            // Need to account for no grades
-                            line.add(null);
-                            line.add(null);
-                        }
-                    }
-                }
-                csvWriter.writeNext(line.toArray(new String[]{}));
-            }
-
-            csvWriter.close();
-            fw.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return tempFile;
-
+    @Override
+    protected void onDetach() {
+        super.onDetach();
+        assignmentsModel.detach();
     }
 
     /*
@@ -167,13 +115,28 @@ public class GradeImportUploadStep extends Panel {
 
                 try {
                     log.debug("file upload success");
-                    //get all users
-                    Map<String, String> userMap = makeUserMap(grades);
+                    //get all users. only the roster is needed for this, not their grades
+                    Map<String, String> userMap = businessService.getGradeableUserEidMap();
 
                     //turn file into list
                     ImportedGradeWrapper importedGradeWrapper = parseImportedGradeFile(upload.getInputStream(), upload.getContentType(), userMap);
 
-                    List<ProcessedGradeItem> processedGradeItems = ImportGradesHelper.processImportedGrades(importedGradeWrapper, assignments, grades);
+                    //reject the file if any item header has points that are not a number, before anything is diffed or created
+                    String invalidPointsHeader = getInvalidPointsHeader(importedGradeWrapper);
+                    if (invalidPointsHeader != null) {
+                        error(new StringResourceModel("importExport.error.points", null, new Object[] {invalidPointsHeader}).getString());
+                        return;
+                    }
+
+                    List<ProcessedGradeItem> processedGradeItems = null;
+                    if (importedGradeWrapper != null) {
+                        //only the grades for the assignments and students in the file are needed for the diff
+                        List<Assignment> assignments = assignmentsModel.getObject();
+                        List<GbStudentGradeInfo> grades = businessService.getGrades(
+                                getAssignmentIdsInFile(importedGradeWrapper, assignments), getStudentUuidsInFile(importedGradeWrapper));
+
+                        processedGradeItems = ImportGradesHelper.processImportedGrades(importedGradeWrapper, assignments, grades);
+                    }
 
                     //if null, the file was of the incorrect type
                     //if empty there are no users
@@ -202,17 +165,58 @@ public class GradeImportUploadStep extends Panel {
     }
 
     /**
-     * Create a map so that we can use the user's eid (from the imported file) to lookup their uuid (used to store the grade by the backend service)
-     * @param grades
-     * @return Map where the user's eid is the key and the uuid is the value
+     * Get the title of the first item column in the imported file whose points are not a number
+     * @param importedGradeWrapper the parsed file, may be null
+     * @return the title, or null if all are valid
      */
-    private Map<String, String> makeUserMap(List<GbStudentGradeInfo> grades) {
-        Map<String, String> userMap = new HashMap<String, String>();
+    private String getInvalidPointsHeader(ImportedGradeWrapper importedGradeWrapper) {
+        if (importedGradeWrapper == null) {
+            return null;
+        }
+        for (ImportColumn column : importedGradeWrapper.getColumns()) {
+            if (column.getType() == ImportColumn.TYPE_ITEM_WITH_INVALID_POINTS) {
+                return column.getColumnTitle();
+            }
+        }
+        return null;
+    }
 
-        for (GbStudentGradeInfo studentGradeInfo : grades) {
-            userMap.put(studentGradeInfo.getStudentEid(), studentGradeInfo.getStudentUuid());
+    /**
+     * Get the ids of the assignments that have a column in the imported file
+     * @param importedGradeWrapper the parsed file
+     * @param assignments all assignments in the gradebook
+     * @return the ids of the assignments in the file
+     */
+    private Set<Long> getAssignmentIdsInFile(ImportedGradeWrapper importedGradeWrapper, List<Assignment> assignments) {
+        Set<String> columnTitles = new HashSet<String>();
+        for (ImportColumn column : importedGradeWrapper.getColumns()) {
+            if (column.getType() == ImportColumn.TYPE_ITEM_WITH_POINTS || column.getType() == ImportColumn.TYPE_ITEM_WITH_COMMENTS) {
+                columnTitles.add(column.getColumnTitle());
+            }
+        }
+
+        Set<Long> assignmentIds = new HashSet<Long>();
+        for (Assignment assignment : assignments) {
+            if (columnTitles.contains(assignment.getName())) {
+                assignmentIds.add(assignment.getId());
+            }
+        }
+        return assignmentIds;
+    }
+
+    /**
+     * Get the uuids of the students in the imported file. Students that aren't in the site have no uuid so are left out.
+     * @param importedGradeWrapper the parsed file
+     * @return the uuids of the students in the file
+     */
+    private Set<String> getStudentUuidsInFile(ImportedGradeWrapper importedGradeWrapper) {
+        Set<String> studentUuids = new HashSet<String>();
+        for (ImportedGrade importedGrade : importedGradeWrapper.getImportedGrades()) {
+            if (importedGrade.getStudentUuid() != null) {
+                studentUuids.add(importedGrade.getStudentUuid());
+            }
         }
-        return userMap;
+        return studentUuids;
     }
 
     public ImportedGradeWrapper parseImportedGradeFile(InputStream is, String mimetype, Map<String, String> userMap){
@@ -0,0 +1,192 @@
+package org.sakaiproject.gradebookng.tool.util;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.apache.wicket.Page;
+import org.apache.wicket.serialize.ISerializer;
+
+/**
+ * Wraps the page serializer to keep an eye on how big pages are in the page store.
+ *
+ * If a page is over the size budget, a warning is logged with a breakdown of the serialized bytes by type, so the
+ * components or models that are holding on to too much can be found. With profiling on, the breakdown is logged for every page.
+ *
+ * The breakdown needs the page to be serialized a second time, so it is only done when it will be logged.
+ * Bytes are attributed to the object being written when they are written, so an object's own fields are counted against its
+ * type, and strings, boxed values and primitive arrays are counted against the object that holds them. It is approximate but
+ * is enough to show where the weight is.
+ */
+public class PageSizeProfilingSerializer implements ISerializer {
+
+	private static final Logger log = Logger.getLogger(PageSizeProfilingSerializer.class);
+
+	//number of types to list in the breakdown
+	private static final int REPORT_SIZE = 15;
+
+	private final ISerializer delegate;
+	private final long budget;
+	private final boolean profiling;
+
+	/**
+	 * @param delegate the serializer that does the work
+	 * @param budget size in bytes over which a warning is logged, or 0 for no budget
+	 * @param profiling log the breakdown for every page, not just those over budget
+	 */
+	public PageSizeProfilingSerializer(ISerializer delegate, long budget, boolean profiling) {
+		this.delegate = delegate;
+		this.budget = budget;
+		this.profiling = profiling;
+	}
+
+	@Override
+	public byte[] serialize(Object object) {
+		byte[] data = this.delegate.serialize(object);
+
+		if(data != null && object instanceof Page) {
+			boolean overBudget = this.budget > 0 && data.length > this.budget;
+			if(overBudget || this.profiling) {
+				String report = buildReport((Page) object, data.length);
+				if(overBudget) {
+					log.warn("Serialized page is over the budget of " + this.budget + " bytes. " + report);
+				} else {
+					log.info(report);
+				}
+			}
+		}
+		return data;
+	}
+
+	@Override
+	public Object deserialize(byte[] data) {
+		return this.delegate.deserialize(data);
+	}
+
+	private String buildReport(Page page, int size) {
+		StringBuilder report = new StringBuilder();
+		report.append(page.getClass().getSimpleName()).append(" (id ").append(page.getPageId()).append(") is ").append(size).append(" bytes.");
+
+		Map<String, TypeSize> sizes;
+		try {
+			sizes = measure(page);
+		} catch (IOException | RuntimeException e) {
+			log.debug("Could not profile the serialized page", e);
+			return report.toString();
+		}
+
+		List<TypeSize> sorted = new ArrayList<>(sizes.values());
+		Collections.sort(sorted, new Comparator<TypeSize>() {
+			@Override
+			public int compare(TypeSize t1, TypeSize t2) {
+				return Long.compare(t2.bytes, t1.bytes);
+			}
+		});
+
+		report.append(" Largest types:");
+		for(TypeSize typeSize: sorted.subList(0, Math.min(REPORT_SIZE, sorted.size()))) {
+			report.append("\n  ").append(typeSize.type).append(": ").append(typeSize.bytes).append(" bytes in ").append(typeSize.count).append(" objects");
+		}
+		return report.toString();
+	}
+
+	private static Map<String, TypeSize> measure(Page page) throws IOException {
+		CountingOutputStream counter = new CountingOutputStream();
+		ProfilingObjectOutputStream out = new ProfilingObjectOutputStream(counter);
+		out.writeObject(page);
+		out.finish();
+		return out.sizes;
+	}
+
+	/**
+	 * Counts the bytes written, and throws them away
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			this.count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			this.count += len;
+		}
+	}
+
+	/**
+	 * Uses the replaceObject hook to see each object as it is written
+	 */
+	private static class ProfilingObjectOutputStream extends ObjectOutputStream {
+
+		private final CountingOutputStream counter;
+		private final Map<String, TypeSize> sizes = new HashMap<>();
+
+		private TypeSize current;
+		private long mark;
+
+		ProfilingObjectOutputStream(CountingOutputStream counter) throws IOException {
+			super(counter);
+			this.counter = counter;
+			enableReplaceObject(true);
+		}
+
+		@Override
+		protected Object replaceObject(Object obj) throws IOException {
+			if(!isValue(obj)) {
+				attribute();
+
+				String type = obj.getClass().getName();
+				TypeSize typeSize = this.sizes.get(type);
+				if(typeSize == null) {
+					typeSize = new TypeSize(type);
+					this.sizes.put(type, typeSize);
+				}
+				typeSize.count++;
+				this.current = typeSize;
+			}
+			return obj;
+		}
+
+		void finish() throws IOException {
+			attribute();
+		}
+
+		/**
+		 * Count the bytes written since the last object against that object's type
+		 */
+		private void attribute() throws IOException {
+			flush();
+			if(this.current != null) {
+				this.current.bytes += this.counter.count - this.mark;
+			}
+			this.mark = this.counter.count;
+		}
+
+		private static boolean isValue(Object obj) {
+			Class<?> type = obj.getClass();
+			return obj instanceof String || obj instanceof Number || obj instanceof Boolean || obj instanceof Character
+					|| obj instanceof Enum || (type.isArray() && type.getComponentType().isPrimitive());
+		}
+	}
+
+	private static class TypeSize {
+
+		private final String type;
+		private long bytes;
+		private int count;
+
+		TypeSize(String type) {
+			this.type = type;
+		}
+	}
+}
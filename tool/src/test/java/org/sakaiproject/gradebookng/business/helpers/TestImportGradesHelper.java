@@ -10,15 +10,19 @@ import org.sakaiproject.gradebookng.business.model.ImportedGrade;
 import org.sakaiproject.gradebookng.business.model.ImportedGradeItem;
 import org.sakaiproject.gradebookng.business.model.ImportedGradeWrapper;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItem;
+import org.sakaiproject.gradebookng.business.model.ProcessedGradeItemDetail;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItemStatus;
 import org.sakaiproject.service.gradebook.shared.Assignment;
 import org.sakaiproject.service.gradebook.shared.GradeDefinition;
 import org.sakaiproject.user.api.User;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -53,6 +57,92 @@ public class TestImportGradesHelper {
         testImport(importedGradeWrapper);
     }
 
+    @Test
+    public void testXlsxImport() throws Exception {
+        InputStream is = this.getClass().getClassLoader().getResourceAsStream("grades_import.xlsx");
+        ImportedGradeWrapper importedGradeWrapper = ImportGradesHelper.parseXls(is, userMap());
+        is.close();
+
+        testImport(importedGradeWrapper);
+    }
+
+    @Test
+    public void testXlsxExportRoundTrip() throws Exception {
+        List<Assignment> assignments = mockAssignments();
+
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getId()).thenReturn("student1");
+        Mockito.when(user.getEid()).thenReturn("student1");
+        Mockito.when(user.getFirstName()).thenReturn("First");
+        Mockito.when(user.getLastName()).thenReturn("Last");
+        GbStudentGradeInfo studentGradeInfo = new GbStudentGradeInfo(user);
+        GradeDefinition gradeDefinition = new GradeDefinition();
+        gradeDefinition.setGrade("7.0");
+        gradeDefinition.setGradeComment("well done");
+        studentGradeInfo.addGrade(1L, new GbGradeInfo(gradeDefinition));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportGradesHelper.writeXlsx(out, assignments, Collections.singletonList(studentGradeInfo).iterator(), true);
+
+        ImportedGradeWrapper importedGradeWrapper = ImportGradesHelper.parseXls(new ByteArrayInputStream(out.toByteArray()), userMap());
+        Assert.assertNotNull(importedGradeWrapper);
+
+        List<ImportColumn> columns = new ArrayList<ImportColumn>(importedGradeWrapper.getColumns());
+        Assert.assertEquals("wrong number of columns", 2 + assignments.size() * 2, columns.size());
+        Assert.assertEquals(new ImportColumn("Assignment 1", 10.0, ImportColumn.TYPE_ITEM_WITH_POINTS), columns.get(2));
+        Assert.assertEquals("Assignment 1", columns.get(3).getColumnTitle());
+        Assert.assertEquals(ImportColumn.TYPE_ITEM_WITH_COMMENTS, columns.get(3).getType());
+
+        Assert.assertEquals("unexpected list size", 1, importedGradeWrapper.getImportedGrades().size());
+        ImportedGrade importedGrade = importedGradeWrapper.getImportedGrades().get(0);
+        Assert.assertEquals("student1", importedGrade.getStudentEid());
+        Assert.assertEquals("student1", importedGrade.getStudentUuid());
+        Assert.assertEquals("Last, First", importedGrade.getStudentName());
+
+        ImportedGradeItem item = importedGrade.getGradeItemMap().get("Assignment 1");
+        Assert.assertEquals("scores don't match", "7", item.getGradeItemScore());
+        Assert.assertEquals("comments don't match", "well done", item.getGradeItemComment());
+    }
+
+    @Test
+    public void testCsvExportRoundTrip() throws Exception {
+        List<Assignment> assignments = mockAssignments();
+
+        User user = Mockito.mock(User.class);
+        Mockito.when(user.getId()).thenReturn("student1");
+        Mockito.when(user.getEid()).thenReturn("student1");
+        Mockito.when(user.getFirstName()).thenReturn("Zo\u00EB");
+        Mockito.when(user.getLastName()).thenReturn("M\u00FCller");
+        GbStudentGradeInfo studentGradeInfo = new GbStudentGradeInfo(user);
+        GradeDefinition gradeDefinition = new GradeDefinition();
+        gradeDefinition.setGrade("7.0");
+        gradeDefinition.setGradeComment("tr\u00E8s bien");
+        studentGradeInfo.addGrade(1L, new GbGradeInfo(gradeDefinition));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        //as saved by a spreadsheet application that adds a byte order mark
+        out.write(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+        ExportGradesHelper.writeCsv(out, assignments, Collections.singletonList(studentGradeInfo).iterator(), true);
+
+        ImportedGradeWrapper importedGradeWrapper = ImportGradesHelper.parseCsv(new ByteArrayInputStream(out.toByteArray()), userMap());
+        Assert.assertNotNull(importedGradeWrapper);
+
+        List<ImportColumn> columns = new ArrayList<ImportColumn>(importedGradeWrapper.getColumns());
+        Assert.assertEquals("wrong number of columns", 2 + assignments.size() * 2, columns.size());
+        Assert.assertEquals(new ImportColumn("Student ID", null, ImportColumn.TYPE_REGULAR), columns.get(0));
+        Assert.assertEquals(new ImportColumn("Assignment 1", 10.0, ImportColumn.TYPE_ITEM_WITH_POINTS), columns.get(2));
+
+        Assert.assertEquals("unexpected list size", 1, importedGradeWrapper.getImportedGrades().size());
+        ImportedGrade importedGrade = importedGradeWrapper.getImportedGrades().get(0);
+        Assert.assertEquals("student1", importedGrade.getStudentEid());
+        Assert.assertEquals("student1", importedGrade.getStudentUuid());
+        Assert.assertEquals("M\u00FCller, Zo\u00EB", importedGrade.getStudentName());
+
+        ImportedGradeItem item = importedGrade.getGradeItemMap().get("Assignment 1");
+        Assert.assertEquals("scores don't match", "7", item.getGradeItemScore());
+        Assert.assertEquals("comments don't match", "tr\u00E8s bien", item.getGradeItemComment());
+    }
+
     private void testImport(ImportedGradeWrapper importedGradeWrapper) throws Exception {
         Assert.assertNotNull(importedGradeWrapper);
 
@@ -113,6 +203,22 @@ public class TestImportGradesHelper {
 
     }
 
+    @Test
+    public void testMapHeaderRow() throws Exception {
+        String[] header = {"Student ID", "The Assignment [10]", "*/ The Assignment Comments */", "Quiz [Part A] [2.5]", "Notes [draft", null, "Quiz [abc]"};
+
+        Map<Integer, ImportColumn> mapping = ImportGradesHelper.mapHeaderRow(header);
+
+        Assert.assertEquals("wrong number of columns", 7, mapping.size());
+        Assert.assertEquals(new ImportColumn("Student ID", null, ImportColumn.TYPE_REGULAR), mapping.get(0));
+        Assert.assertEquals(new ImportColumn("The Assignment", 10.0, ImportColumn.TYPE_ITEM_WITH_POINTS), mapping.get(1));
+        Assert.assertEquals(new ImportColumn("The Assignment", null, ImportColumn.TYPE_ITEM_WITH_COMMENTS), mapping.get(2));
+        Assert.assertEquals(new ImportColumn("Quiz [Part A]", 2.5, ImportColumn.TYPE_ITEM_WITH_POINTS), mapping.get(3));
+        Assert.assertEquals(new ImportColumn("Notes [draft", null, ImportColumn.TYPE_REGULAR), mapping.get(4));
+        Assert.assertEquals(new ImportColumn(null, null, ImportColumn.TYPE_REGULAR), mapping.get(5));
+        Assert.assertEquals(new ImportColumn("Quiz", null, ImportColumn.TYPE_ITEM_WITH_INVALID_POINTS), mapping.get(6));
+    }
+
     @Test
     public void testProcessImportedGrades() throws Exception {
         List<Assignment> assignments = mockAssignments();
@@ -128,14 +234,18 @@ public class TestImportGradesHelper {
         //assignment 1
         Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_NA, processedGradeItems.get(0).getStatus().getStatusCode());
         Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_NA, processedGradeItems.get(0).getCommentStatus().getStatusCode());
+        assertChangeTypes(processedGradeItems.get(0), ProcessedGradeItemDetail.ChangeType.UNCHANGED, ProcessedGradeItemDetail.ChangeType.UNCHANGED);
 
         //assignment 2
         Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_UPDATE, processedGradeItems.get(1).getStatus().getStatusCode());
         Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_UPDATE, processedGradeItems.get(1).getCommentStatus().getStatusCode());
+        assertChangeTypes(processedGradeItems.get(1), ProcessedGradeItemDetail.ChangeType.UNCHANGED, ProcessedGradeItemDetail.ChangeType.UPDATE,
+                ProcessedGradeItemDetail.ChangeType.NEW);
 
         //assignment 3
         Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_NEW, processedGradeItems.get(2).getStatus().getStatusCode());
         Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_NEW, processedGradeItems.get(2).getCommentStatus().getStatusCode());
+        assertChangeTypes(processedGradeItems.get(2), ProcessedGradeItemDetail.ChangeType.NEW);
 
         //assignment ext
         ProcessedGradeItemStatus extStatus = processedGradeItems.get(3).getStatus();
@@ -144,6 +254,50 @@ public class TestImportGradesHelper {
 
     }
 
+    @Test
+    public void testProcessImportedCommentOnly() throws Exception {
+        ImportedGradeWrapper importedGradeWrapper = mockImportedGrades();
+        importedGradeWrapper.getImportedGrades().get(0).getGradeItemMap()
+                .put("Assignment 1", new ImportedGradeItem("Assignment 1", "a new comment", "1.0"));
+
+        List<ProcessedGradeItem> processedGradeItems = ImportGradesHelper.processImportedGrades(importedGradeWrapper, mockAssignments(), mockStudentGrades());
+
+        Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_NA, processedGradeItems.get(0).getStatus().getStatusCode());
+        Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_UPDATE, processedGradeItems.get(0).getCommentStatus().getStatusCode());
+        assertChangeTypes(processedGradeItems.get(0), ProcessedGradeItemDetail.ChangeType.COMMENT_ONLY, ProcessedGradeItemDetail.ChangeType.UNCHANGED);
+        Assert.assertEquals("current grade not kept", "1", processedGradeItems.get(0).getProcessedGradeItemDetails().get(0).getGrade());
+    }
+
+    @Test
+    public void testProcessImportedUnknownStudent() throws Exception {
+        ImportedGradeWrapper importedGradeWrapper = mockImportedGrades();
+
+        //not in the site, so the parser couldn't find a uuid for them
+        ImportedGrade unknown = new ImportedGrade();
+        unknown.setStudentEid("notinsite");
+        unknown.setStudentName("Not In Site");
+        Map<String, ImportedGradeItem> gradeMap = new HashMap<>();
+        gradeMap.put("Assignment 1", new ImportedGradeItem("Assignment 1", "comment", "9"));
+        unknown.setGradeItemMap(gradeMap);
+        importedGradeWrapper.getImportedGrades().add(unknown);
+
+        List<ProcessedGradeItem> processedGradeItems = ImportGradesHelper.processImportedGrades(importedGradeWrapper, mockAssignments(), mockStudentGrades());
+
+        //the unknown student doesn't make the item look changed
+        Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_NA, processedGradeItems.get(0).getStatus().getStatusCode());
+        Assert.assertEquals("wrong status", ProcessedGradeItemStatus.STATUS_NA, processedGradeItems.get(0).getCommentStatus().getStatusCode());
+        assertChangeTypes(processedGradeItems.get(0), ProcessedGradeItemDetail.ChangeType.UNCHANGED, ProcessedGradeItemDetail.ChangeType.UNCHANGED,
+                ProcessedGradeItemDetail.ChangeType.UNKNOWN_STUDENT);
+    }
+
+    private void assertChangeTypes(ProcessedGradeItem processedGradeItem, ProcessedGradeItemDetail.ChangeType... expected) {
+        List<ProcessedGradeItemDetail> details = processedGradeItem.getProcessedGradeItemDetails();
+        Assert.assertEquals("wrong number of details", expected.length, details.size());
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("wrong change type", expected[i], details.get(i).getChangeType());
+        }
+    }
+
     /**
      * Mock up some assignment data
      * @return List of mocked assignments
@@ -223,13 +377,13 @@ public class TestImportGradesHelper {
         List<ImportColumn> columns = new ArrayList<ImportColumn>();
         columns.add(new ImportColumn("Student ID", null, ImportColumn.TYPE_REGULAR));
         columns.add(new ImportColumn("Student Name", null, ImportColumn.TYPE_REGULAR));
-        columns.add(new ImportColumn("Assignment 1", "10.0", ImportColumn.TYPE_ITEM_WITH_POINTS));
-        columns.add(new ImportColumn("Assignment 1", "N/A", ImportColumn.TYPE_ITEM_WITH_COMMENTS));
-        columns.add(new ImportColumn("Assignment 2", "10.0", ImportColumn.TYPE_ITEM_WITH_POINTS));
-        columns.add(new ImportColumn("Assignment 2", "N/A", ImportColumn.TYPE_ITEM_WITH_COMMENTS));
-        columns.add(new ImportColumn("Assignment 3", "100.0", ImportColumn.TYPE_ITEM_WITH_POINTS));
-        columns.add(new ImportColumn("Assignment 3", "N/A", ImportColumn.TYPE_ITEM_WITH_COMMENTS));
-        columns.add(new ImportColumn("Assignment Ext", "1000.0", ImportColumn.TYPE_ITEM_WITH_POINTS));
+        columns.add(new ImportColumn("Assignment 1", 10.0, ImportColumn.TYPE_ITEM_WITH_POINTS));
+        columns.add(new ImportColumn("Assignment 1", null, ImportColumn.TYPE_ITEM_WITH_COMMENTS));
+        columns.add(new ImportColumn("Assignment 2", 10.0, ImportColumn.TYPE_ITEM_WITH_POINTS));
+        columns.add(new ImportColumn("Assignment 2", null, ImportColumn.TYPE_ITEM_WITH_COMMENTS));
+        columns.add(new ImportColumn("Assignment 3", 100.0, ImportColumn.TYPE_ITEM_WITH_POINTS));
+        columns.add(new ImportColumn("Assignment 3", null, ImportColumn.TYPE_ITEM_WITH_COMMENTS));
+        columns.add(new ImportColumn("Assignment Ext", 1000.0, ImportColumn.TYPE_ITEM_WITH_POINTS));
 
         importedGradeWrapper.setColumns(columns);
 
@@ -0,0 +1,53 @@
+package org.sakaiproject.gradebookng.business.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestGbAssignmentStatistics {
+
+	private static final double DELTA = 0.0001;
+
+	@Test
+	public void computesStatistics() {
+		GbAssignmentStatistics statistics = new GbAssignmentStatistics(100, new double[] {90, 40, 75, 55});
+
+		Assert.assertEquals(4, statistics.getCount());
+		Assert.assertEquals(65, statistics.getMean(), DELTA);
+		Assert.assertEquals(65, statistics.getMedian(), DELTA);
+		Assert.assertEquals(Math.sqrt(362.5), statistics.getStandardDeviation(), DELTA);
+		Assert.assertEquals(40, statistics.getMin(), DELTA);
+		Assert.assertEquals(90, statistics.getMax(), DELTA);
+		Assert.assertArrayEquals(new int[] {0, 0, 0, 0, 1, 1, 0, 1, 0, 1}, statistics.getHistogram());
+	}
+
+	@Test
+	public void updatesMatchRecomputing() {
+		GbAssignmentStatistics statistics = new GbAssignmentStatistics(50, new double[] {10, 20, 30});
+		statistics.update("20", "45");
+		statistics.update(null, "60");
+		statistics.update("10", null);
+		statistics.update("A", "B");
+
+		GbAssignmentStatistics expected = new GbAssignmentStatistics(50, new double[] {30, 45, 60});
+
+		Assert.assertEquals(expected.getCount(), statistics.getCount());
+		Assert.assertEquals(expected.getMean(), statistics.getMean(), DELTA);
+		Assert.assertEquals(expected.getMedian(), statistics.getMedian(), DELTA);
+		Assert.assertEquals(expected.getStandardDeviation(), statistics.getStandardDeviation(), DELTA);
+		Assert.assertEquals(expected.getMin(), statistics.getMin(), DELTA);
+		Assert.assertEquals(expected.getMax(), statistics.getMax(), DELTA);
+		Assert.assertArrayEquals(expected.getHistogram(), statistics.getHistogram());
+	}
+
+	@Test
+	public void emptyHasNoValues() {
+		GbAssignmentStatistics statistics = new GbAssignmentStatistics(10, new double[0]);
+		statistics.update(null, "5");
+		statistics.update("5", null);
+
+		Assert.assertEquals(0, statistics.getCount());
+		Assert.assertNull(statistics.getMean());
+		Assert.assertNull(statistics.getMedian());
+		Assert.assertNull(statistics.getMin());
+	}
+}
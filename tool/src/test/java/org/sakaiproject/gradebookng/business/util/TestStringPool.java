@@ -0,0 +1,30 @@
+package org.sakaiproject.gradebookng.business.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStringPool {
+
+	@Test
+	public void returnsPooledCopy() {
+		StringPool pool = new StringPool(10, 10);
+		String first = pool.get(new String("10.0"));
+		String second = pool.get(new String("10.0"));
+
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, pool.size());
+		Assert.assertNull(pool.get(null));
+	}
+
+	@Test
+	public void isBounded() {
+		StringPool pool = new StringPool(1, 4);
+		pool.get("7.5");
+		String other = new String("8.0");
+		String longer = new String("graded late");
+
+		Assert.assertSame(other, pool.get(other));
+		Assert.assertSame(longer, pool.get(longer));
+		Assert.assertEquals(1, pool.size());
+	}
+}
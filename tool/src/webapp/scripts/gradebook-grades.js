@@ -647,6 +647,31 @@ GradebookSpreadsheet.prototype.setupColumnDragAndDrop = function() {
   }
 
 
+  // the move left/right menu options move the column straight away and save the new order in the background
+  self.$table.on("click", ".move-assignment-left, .move-assignment-right", function(event) {
+    event.preventDefault();
+
+    var $source = $(this).closest(".gb-grade-item-column-cell");
+    var $siblings = $source.siblings(".gb-grade-item-column-cell");
+
+    // if grouped, only move within the category
+    if (self.isGroupedByCategory()) {
+      $siblings = $siblings.filter("." + $source.data("model").categoryDragScope);
+    }
+
+    var $target;
+    if ($(this).is(".move-assignment-left")) {
+      $target = $siblings.filter(function() { return $(this).index() < $source.index(); }).last();
+    } else {
+      $target = $siblings.filter(function() { return $(this).index() > $source.index(); }).first();
+    }
+
+    if ($target.length > 0) {
+      applyAndPersistOrder($source, $target);
+    }
+  });
+
+
   self.find(".gb-grade-item-column-cell").on("mousedown", function() {
     self.$spreadsheet.data("activeCell", $(this));
     $(this).focus();
@@ -700,6 +725,43 @@ GradebookSpreadsheet.prototype.setupColumnDragAndDrop = function() {
 };
 
 
+/**
+ * Reorder the rows to match the students in the sorted grade matrix.
+ * The rows are moved rather than rendered again, so column order, hidden columns and cell state are kept.
+ */
+GradebookSpreadsheet.prototype.sortRows = function(studentUuids, assignmentId, direction) {
+  var self = this;
+
+  var $tbody = self.$table.find("tbody");
+  var $fixedRows = self.$fixedColumns.find("tbody tr");
+
+  // keep each row with its fixed column row
+  var rowsByStudent = {};
+  $tbody.children("tr").each(function(i, row) {
+    rowsByStudent[$(row).data("studentuuid")] = {
+      row: row,
+      fixedRow: $fixedRows.get(i)
+    };
+  });
+
+  $.each(studentUuids, function(i, studentUuid) {
+    var rows = rowsByStudent[studentUuid];
+    if (rows) {
+      $tbody.append(rows.row);
+      if (rows.fixedRow) {
+        self.$fixedColumns.find("tbody").append(rows.fixedRow);
+      }
+    }
+  });
+
+  // flag the sorted column
+  self.$table.find("thead .gb-title a").removeClass("gb-sort-ascending gb-sort-descending");
+  self.$table.find("thead [data-assignmentid='" + assignmentId + "'] .gb-title a").addClass("gb-sort-" + direction);
+
+  self.refreshFixedTableHeader(true);
+};
+
+
 GradebookSpreadsheet.prototype.setupToolbar = function() {
   this.toolbarModel = new GradebookToolbar($("#gradebookGradesToolbar"), this);
 };
@@ -1079,7 +1141,10 @@ GradebookSpreadsheet.prototype.enablePopovers = function($target) {
   var $popovers = $target.find('[data-toggle="popover"]');
 
   $popovers.popover({
-    trigger: 'manual'
+    trigger: 'manual',
+    content: function() {
+      return self.buildPopoverContent($(this));
+    }
   }).blur(function(event) {
     clearTimeout($(event.target).data("popoverShowTimeout"));
     $(event.target).data("popoverHideTimeout", setTimeout(function() {
@@ -1100,6 +1165,59 @@ GradebookSpreadsheet.prototype.enablePopovers = function($target) {
 };
 
 
+/**
+ * Build the popover for a cell from the page's template, keeping just the notifications flagged on the cell.
+ * The comment isn't in the page so it is fetched the first time the popover is shown.
+ */
+GradebookSpreadsheet.prototype.buildPopoverContent = function($cell) {
+  var flags = ($cell.data("notifications") || "").split(" ");
+
+  var $content = $("#gradeItemCellPopoverTemplate .gb-popover-notifications").clone();
+  $content.find("[data-notification]").each(function() {
+    if ($.inArray($(this).data("notification"), flags) == -1) {
+      $(this).remove();
+    }
+  });
+
+  var $comment = $content.find(".gb-popover-notification-has-comment");
+  if ($comment.length > 0) {
+    var assignmentId = $cell.data("assignmentid");
+    var studentUuid = $cell.data("studentuuid");
+    $comment.attr("data-assignmentid", assignmentId).attr("data-studentuuid", studentUuid);
+
+    var $snippet = $comment.find(".gb-popover-comment-snippet");
+    if ($cell.data("comment") != null) {
+      $snippet.text(this.makeSnippet($cell.data("comment"), 100));
+    } else {
+      var self = this;
+      GradebookAPI.getComment(this.$table.data("siteid"), assignmentId, studentUuid, function(comment) {
+        $cell.data("comment", comment);
+        $snippet.text(self.makeSnippet(comment, 100));
+      });
+    }
+  }
+
+  return $content;
+};
+
+
+/**
+ * Shorten text to a maximum length, breaking on a word if possible
+ */
+GradebookSpreadsheet.prototype.makeSnippet = function(text, max) {
+  if (text.length <= max) {
+    return text;
+  }
+
+  var end = text.lastIndexOf(" ", max - 3);
+  if (end == -1) {
+    end = max - 3;
+  }
+
+  return text.substring(0, end) + "...";
+};
+
+
 GradebookSpreadsheet.prototype.ready = function() {
   this.$spreadsheet.addClass("initialized").trigger("ready.gradebookng");
 }
@@ -1829,6 +1947,29 @@ GradebookAPI.updateCategorizedAssignmentOrder = function(siteId, assignmentId, c
 };
 
 
+GradebookAPI.getGradeMatrix = function(siteId, groupId, onSuccess, onError) {
+  var endpointURL = "/direct/gbng/grades/" + siteId + (groupId ? "/" + encodeURIComponent(groupId) : "") + ".json";
+  GradebookAPI._GET(endpointURL, null, onSuccess, onError);
+};
+
+
+GradebookAPI.saveGrade = function(siteId, assignmentId, studentUuid, oldGrade, newGrade, onSuccess, onError) {
+  GradebookAPI._POST("/direct/gbng/grade", {
+                                             siteId: siteId,
+                                             assignmentId: assignmentId,
+                                             studentUuid: studentUuid,
+                                             oldGrade: oldGrade,
+                                             newGrade: newGrade
+                                           }, onSuccess, onError)
+};
+
+
+GradebookAPI.getComment = function(siteId, assignmentId, studentUuid, onSuccess, onError) {
+  var endpointURL = "/direct/gbng/comment/" + siteId + "/" + assignmentId + "/" + studentUuid;
+  GradebookAPI._GET(endpointURL, null, onSuccess, onError);
+};
+
+
 GradebookAPI._GET = function(url, data, onSuccess, onError, onComplete) {
   $.ajax({
     type: "GET",
@@ -1919,7 +2060,16 @@ GradebookWicketEventProxy = {
  * Let's initialize our GradebookSpreadsheet 
  */
 $(function() {
-  sakai.gradebookng = {
-    spreadsheet: new GradebookSpreadsheet($("#gradebookGrades"))
-  };
+  var $virtualGrid = $("#gradebookVirtualGrid");
+
+  // large courses are rendered client side from the grade matrix instead of the Wicket table
+  if ($virtualGrid.length > 0) {
+    sakai.gradebookng = {
+      grid: new GradebookVirtualGrid($virtualGrid)
+    };
+  } else {
+    sakai.gradebookng = {
+      spreadsheet: new GradebookSpreadsheet($("#gradebookGrades"))
+    };
+  }
 });
\ No newline at end of file
@@ -0,0 +1,377 @@
+/**************************************************************************************
+ *                    Gradebook Virtual Grid Javascript
+ *************************************************************************************/
+
+/**************************************************************************************
+ * A GradebookVirtualGrid renders the grades from the compact matrix returned by
+ * /direct/gbng/grades. Only the rows and columns in view (plus a small overscan) are in
+ * the DOM at any one time, so it copes with courses that are too big for the Wicket table.
+ * Edits are saved one cell at a time via /direct/gbng/grade.
+ */
+function GradebookVirtualGrid($grid) {
+  this.$grid = $grid;
+  this.siteId = $grid.data("siteid");
+  this.groupId = $grid.data("groupid"); // only the members of this section or group, if set
+
+  this.ROW_HEIGHT = 36;
+  this.COLUMN_WIDTH = 110;
+  this.OVERSCAN = 4;
+
+  this._matrix = null;
+  this._saveStyles = {}; // css class for cells that have been saved, keyed on "row:col"
+  this._comments = {};   // comment text that has been fetched, keyed on "row:col"
+  this._window = null;   // the rows and columns currently rendered
+  this._focus = null;    // the cell with focus, if any
+
+  this.setupLayout();
+  this.load();
+};
+
+
+GradebookVirtualGrid.prototype.setupLayout = function() {
+  var self = this;
+
+  self.$corner = $("<div>").addClass("gb-vg-corner").text(self.$grid.data("studentsheading"));
+  self.$header = $("<div>").addClass("gb-vg-header");
+  self.$headerCanvas = $("<div>").addClass("gb-vg-canvas").appendTo(self.$header);
+  self.$names = $("<div>").addClass("gb-vg-names");
+  self.$namesCanvas = $("<div>").addClass("gb-vg-canvas").appendTo(self.$names);
+  self.$body = $("<div>").addClass("gb-vg-body").attr("role", "grid");
+  self.$bodyCanvas = $("<div>").addClass("gb-vg-canvas").appendTo(self.$body);
+
+  self.$grid.append(self.$corner, self.$header, self.$names, self.$body);
+
+  var scheduled = false;
+  self.$body.on("scroll", function() {
+    // keep the header and names in step with the body, and only render once per frame
+    self.$header.scrollLeft(self.$body.scrollLeft());
+    self.$names.scrollTop(self.$body.scrollTop());
+    if (!scheduled) {
+      scheduled = true;
+      (window.requestAnimationFrame || setTimeout)(function() {
+        scheduled = false;
+        self.render();
+      });
+    }
+  });
+
+  $(window).on("resize", function() {
+    self._window = null;
+    self.render();
+  });
+
+  self.$body.on("click", ".gb-vg-cell", function() {
+    self.focusCell($(this).data("row"), $(this).data("col"));
+  }).on("dblclick", ".gb-vg-cell", function() {
+    self.enterEditMode($(this));
+  }).on("keydown", ".gb-vg-cell", function(event) {
+    return self.onKeydown(event, $(this));
+  }).on("focus", ".gb-vg-cell.has-comment", function() {
+    self.showComment($(this));
+  });
+};
+
+
+GradebookVirtualGrid.prototype.load = function() {
+  var self = this;
+
+  self.$grid.addClass("gb-vg-loading");
+
+  GradebookAPI.getGradeMatrix(self.siteId, self.groupId, function(matrix) {
+    self._matrix = matrix;
+    self.$grid.removeClass("gb-vg-loading");
+
+    var rows = matrix.studentUuids.length;
+    var cols = matrix.assignmentIds.length;
+    self.$bodyCanvas.css({ height: rows * self.ROW_HEIGHT, width: cols * self.COLUMN_WIDTH });
+    self.$namesCanvas.css({ height: rows * self.ROW_HEIGHT });
+    self.$headerCanvas.css({ width: cols * self.COLUMN_WIDTH });
+
+    self.renderHeader();
+    self.render();
+    self.$grid.addClass("initialized").trigger("ready.gradebookng");
+  }, function() {
+    self.$grid.removeClass("gb-vg-loading").addClass("gb-vg-error");
+  });
+};
+
+
+/**
+ * The header is one short row so it is rendered in full, and scrolled with the body
+ */
+GradebookVirtualGrid.prototype.renderHeader = function() {
+  var self = this;
+  var m = self._matrix;
+
+  var html = [];
+  for (var col = 0; col < m.assignmentIds.length; col++) {
+    var points = m.assignmentPoints[col] != null ? String(m.assignmentPoints[col]).replace(/\.0$/, "") : "";
+    html.push('<div class="gb-vg-header-cell" role="columnheader" style="left:', col * self.COLUMN_WIDTH, 'px;width:', self.COLUMN_WIDTH, 'px"',
+              ' data-assignmentid="', m.assignmentIds[col], '" title="', self.escape(m.assignmentNames[col]), '">',
+              '<span class="gb-title">', self.escape(m.assignmentNames[col]), '</span>',
+              '<span class="gb-total-points">/', points, '</span></div>');
+  }
+  self.$headerCanvas.html(html.join(""));
+};
+
+
+/**
+ * Render the cells in the visible window. Nothing is done if the window hasn't moved.
+ */
+GradebookVirtualGrid.prototype.render = function() {
+  var self = this;
+  var m = self._matrix;
+
+  if (!m) {
+    return;
+  }
+
+  var rows = m.studentUuids.length;
+  var cols = m.assignmentIds.length;
+
+  var firstRow = Math.max(0, Math.floor(self.$body.scrollTop() / self.ROW_HEIGHT) - self.OVERSCAN);
+  var lastRow = Math.min(rows, Math.ceil((self.$body.scrollTop() + self.$body.height()) / self.ROW_HEIGHT) + self.OVERSCAN);
+  var firstCol = Math.max(0, Math.floor(self.$body.scrollLeft() / self.COLUMN_WIDTH) - self.OVERSCAN);
+  var lastCol = Math.min(cols, Math.ceil((self.$body.scrollLeft() + self.$body.width()) / self.COLUMN_WIDTH) + self.OVERSCAN);
+
+  var w = self._window;
+  if (w && w.firstRow == firstRow && w.lastRow == lastRow && w.firstCol == firstCol && w.lastCol == lastCol) {
+    return;
+  }
+  self._window = { firstRow: firstRow, lastRow: lastRow, firstCol: firstCol, lastCol: lastCol };
+
+  var names = [];
+  var cells = [];
+  for (var row = firstRow; row < lastRow; row++) {
+    var top = row * self.ROW_HEIGHT;
+
+    names.push('<div class="gb-vg-name" role="rowheader" style="top:', top, 'px" data-studentuuid="', self.escape(m.studentUuids[row]), '">',
+               '<span class="gb-student-name">', self.escape(m.studentNames[row]), '</span>',
+               '<span class="gb-student-eid">', self.escape(m.studentEids[row]), '</span>',
+               '<span class="gb-course-grade">', self.escape(m.courseGrades[row] || ""), '</span></div>');
+
+    for (var col = firstCol; col < lastCol; col++) {
+      cells.push(self.cellHtml(row, col, top));
+    }
+  }
+
+  self.$namesCanvas.html(names.join(""));
+  self.$bodyCanvas.html(cells.join(""));
+
+  if (self._focus) {
+    self.findCell(self._focus.row, self._focus.col).focus();
+  }
+};
+
+
+GradebookVirtualGrid.prototype.cellHtml = function(row, col, top) {
+  var m = this._matrix;
+  var grade = m.grades[col][row] || "";
+
+  var classes = ["gb-vg-cell"];
+  if (m.assignmentExternal[col]) {
+    classes.push("gb-external-item-cell");
+  } else {
+    classes.push("gb-grade-item-cell");
+  }
+
+  var saveStyle = this._saveStyles[row + ":" + col];
+  if (saveStyle) {
+    classes.push(saveStyle);
+  } else if (grade !== "" && parseFloat(grade) > m.assignmentPoints[col]) {
+    classes.push("grade-save-over-limit");
+  }
+  if ((m.commentBitmaps[col][row >>> 5] >>> (row & 31)) & 1) {
+    classes.push("has-comment");
+  }
+
+  return ['<div class="', classes.join(" "), '" role="gridcell" tabindex="-1"',
+          ' aria-readonly="', !!m.assignmentExternal[col], '"',
+          ' style="top:', top, 'px;left:', col * this.COLUMN_WIDTH, 'px;width:', this.COLUMN_WIDTH, 'px"',
+          ' data-row="', row, '" data-col="', col, '"><div>', this.escape(grade), '</div></div>'].join("");
+};
+
+
+GradebookVirtualGrid.prototype.findCell = function(row, col) {
+  return this.$bodyCanvas.find('.gb-vg-cell[data-row="' + row + '"][data-col="' + col + '"]');
+};
+
+
+/**
+ * Move focus to a cell, scrolling it into view first if necessary
+ */
+GradebookVirtualGrid.prototype.focusCell = function(row, col) {
+  var m = this._matrix;
+  row = Math.max(0, Math.min(m.studentUuids.length - 1, row));
+  col = Math.max(0, Math.min(m.assignmentIds.length - 1, col));
+
+  this._focus = { row: row, col: col };
+
+  var top = row * this.ROW_HEIGHT;
+  var left = col * this.COLUMN_WIDTH;
+  if (top < this.$body.scrollTop()) {
+    this.$body.scrollTop(top);
+  } else if (top + this.ROW_HEIGHT > this.$body.scrollTop() + this.$body.height()) {
+    this.$body.scrollTop(top + this.ROW_HEIGHT - this.$body.height());
+  }
+  if (left < this.$body.scrollLeft()) {
+    this.$body.scrollLeft(left);
+  } else if (left + this.COLUMN_WIDTH > this.$body.scrollLeft() + this.$body.width()) {
+    this.$body.scrollLeft(left + this.COLUMN_WIDTH - this.$body.width());
+  }
+
+  this.render();
+  this.findCell(row, col).focus();
+};
+
+
+GradebookVirtualGrid.prototype.onKeydown = function(event, $cell) {
+  var row = $cell.data("row");
+  var col = $cell.data("col");
+
+  if ($(event.target).is(":input")) {
+    return true;
+  }
+
+  switch (event.keyCode) {
+    case 37: this.focusCell(row, col - 1); return false;
+    case 38: this.focusCell(row - 1, col); return false;
+    case 39: this.focusCell(row, col + 1); return false;
+    case 40: this.focusCell(row + 1, col); return false;
+    case 9: this.focusCell(row, event.shiftKey ? col - 1 : col + 1); return false;
+    case 13: this.enterEditMode($cell); return false;
+  }
+
+  return true;
+};
+
+
+GradebookVirtualGrid.prototype.enterEditMode = function($cell) {
+  var self = this;
+  var row = $cell.data("row");
+  var col = $cell.data("col");
+  var m = self._matrix;
+
+  if (m.assignmentExternal[col] || $cell.find(":input").length > 0) {
+    return;
+  }
+
+  var oldGrade = m.grades[col][row] || "";
+  var $input = $("<input type='text'>").val(oldGrade);
+  $cell.children("div").empty().append($input);
+  $input.focus().select();
+
+  var done = false;
+  var finish = function(save) {
+    if (done) {
+      return;
+    }
+    done = true;
+
+    var newGrade = $.trim($input.val());
+    if (save && newGrade !== oldGrade) {
+      self.saveGrade(row, col, oldGrade, newGrade);
+    } else {
+      $cell.replaceWith(self.cellHtml(row, col, row * self.ROW_HEIGHT));
+      self.findCell(row, col).focus();
+    }
+  };
+
+  $input.on("keydown", function(event) {
+    if (event.keyCode == 13) {
+      finish(true);
+      self.focusCell(row + 1, col);
+      return false;
+    } else if (event.keyCode == 27) {
+      finish(false);
+      return false;
+    } else if (event.keyCode == 9) {
+      finish(true);
+      self.focusCell(row, event.shiftKey ? col - 1 : col + 1);
+      return false;
+    }
+  }).on("blur", function() {
+    finish(true);
+  });
+};
+
+
+GradebookVirtualGrid.prototype.saveGrade = function(row, col, oldGrade, newGrade) {
+  var self = this;
+  var m = self._matrix;
+  var key = row + ":" + col;
+
+  if (newGrade !== "" && isNaN(Number(newGrade))) {
+    self._saveStyles[key] = "grade-save-warning";
+    self.refreshCell(row, col);
+    return;
+  }
+
+  // show the new grade straight away, it is put back if the save fails
+  m.grades[col][row] = newGrade;
+  delete self._saveStyles[key];
+  self.refreshCell(row, col);
+
+  GradebookAPI.saveGrade(self.siteId, m.assignmentIds[col], m.studentUuids[row], oldGrade, newGrade, function(result) {
+    switch ($.trim(result)) {
+      case "OK":
+        self._saveStyles[key] = "grade-save-success";
+        break;
+      case "OVER_LIMIT":
+        self._saveStyles[key] = "grade-save-over-limit";
+        break;
+      case "NO_CHANGE":
+        break;
+      default:
+        // ERROR or CONCURRENT_EDIT
+        m.grades[col][row] = oldGrade;
+        self._saveStyles[key] = "grade-save-error";
+    }
+    self.refreshCell(row, col);
+  }, function() {
+    m.grades[col][row] = oldGrade;
+    self._saveStyles[key] = "grade-save-error";
+    self.refreshCell(row, col);
+  });
+};
+
+
+/**
+ * Repaint a single cell, if it is in the rendered window
+ */
+GradebookVirtualGrid.prototype.refreshCell = function(row, col) {
+  var $cell = this.findCell(row, col);
+  if ($cell.length > 0) {
+    var hadFocus = $cell.is(":focus");
+    $cell.replaceWith(this.cellHtml(row, col, row * this.ROW_HEIGHT));
+    if (hadFocus) {
+      this.findCell(row, col).focus();
+    }
+  }
+};
+
+
+/**
+ * Comments aren't in the matrix, so fetch the text the first time a commented cell gets focus
+ */
+GradebookVirtualGrid.prototype.showComment = function($cell) {
+  var self = this;
+  var row = $cell.data("row");
+  var col = $cell.data("col");
+  var key = row + ":" + col;
+
+  if (self._comments.hasOwnProperty(key)) {
+    $cell.attr("title", self._comments[key]);
+    return;
+  }
+
+  GradebookAPI.getComment(self.siteId, self._matrix.assignmentIds[col], self._matrix.studentUuids[row], function(comment) {
+    self._comments[key] = comment;
+    self.findCell(row, col).attr("title", comment);
+  });
+};
+
+
+GradebookVirtualGrid.prototype.escape = function(value) {
+  return $("<div>").text(value == null ? "" : value).html().replace(/"/g, "&quot;");
+};